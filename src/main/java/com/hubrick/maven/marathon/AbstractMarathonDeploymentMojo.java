@@ -0,0 +1,521 @@
+/**
+ * Copyright (C) ${project.inceptionYear} Etaia AS (oss@hubrick.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hubrick.maven.marathon;
+
+import com.google.common.base.Stopwatch;
+import com.jayway.awaitility.Awaitility;
+import com.jayway.awaitility.core.ConditionTimeoutException;
+import mesosphere.marathon.client.Marathon;
+import mesosphere.marathon.client.model.v2.App;
+import mesosphere.marathon.client.model.v2.Deployment;
+import mesosphere.marathon.client.model.v2.GetAppResponse;
+import mesosphere.marathon.client.model.v2.HealthCheckResult;
+import mesosphere.marathon.client.model.v2.Result;
+import mesosphere.marathon.client.model.v2.Task;
+import mesosphere.marathon.client.utils.MarathonException;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+import static com.google.common.collect.Iterables.getOnlyElement;
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+
+/**
+ * Base class for goals which trigger a Marathon deployment and optionally wait for it to finish.
+ */
+abstract class AbstractMarathonDeploymentMojo extends AbstractMarathonMojo {
+
+    /**
+     * URL of the marathon host as specified in pom.xml.
+     */
+    @Parameter(property = "marathonHost", required = true)
+    protected String marathonHost;
+
+    /**
+     * Defines if it should wait that the previous running deployment for the same appId finished.
+     */
+    @Parameter(property = "waitOnRunningDeployment", required = false, defaultValue = "true")
+    protected Boolean waitOnRunningDeployment;
+
+    /**
+     * Max time to wait in sec that the previous running deployment for the same appId finished.
+     */
+    @Parameter(property = "waitOnRunningDeploymentTimeoutInSec", required = false, defaultValue = "300")
+    protected Integer waitOnRunningDeploymentTimeoutInSec;
+
+    /**
+     * Defines if it should wait that the current running deployment finishes until it proceeds.
+     */
+    @Parameter(property = "waitForSuccessfulDeployment", required = false, defaultValue = "true")
+    protected Boolean waitForSuccessfulDeployment;
+
+    /**
+     * Max time to wait in sec that the current running deployment finishes until it proceeds.
+     */
+    @Parameter(property = "waitForSuccessfulDeploymentTimeoutInSec", required = false, defaultValue = "300")
+    protected Integer waitForSuccessfulDeploymentTimeoutInSec;
+
+    /**
+     * Max time to wait in sec while Marathon declines the offers for queued tasks of the current deployment,
+     * e.g. due to missing resources or unsatisfiable constraints. Requires Marathon 1.4+, 0 disables the check.
+     */
+    @Parameter(property = "offerStarvationTimeoutInSec", required = false, defaultValue = "120")
+    protected Integer offerStarvationTimeoutInSec;
+
+    /**
+     * Directory shared by all deploying builds, e.g. on a network file system, which holds a lock per app so that
+     * concurrent deployments of the same app are queued in order. No locking takes place if not set.
+     */
+    @Parameter(property = "deploymentLockDirectory", required = false)
+    protected String deploymentLockDirectory;
+
+    /**
+     * Time in sec after which a lock whose holder stopped renewing it is considered released.
+     */
+    @Parameter(property = "deploymentLockLeaseInSec", required = false, defaultValue = "60")
+    protected Integer deploymentLockLeaseInSec;
+
+    /**
+     * Max time to wait in sec for the deployment lock of an app.
+     */
+    @Parameter(property = "deploymentLockTimeoutInSec", required = false, defaultValue = "1800")
+    protected Integer deploymentLockTimeoutInSec;
+
+    /**
+     * Local file in which the durations of past deployments are kept per app. If set, the poll delay, the poll interval
+     * and the timeout while waiting for a deployment are derived from them once enough deployments were recorded,
+     * instead of using the fixed intervals and waitForSuccessfulDeploymentTimeoutInSec.
+     */
+    @Parameter(property = "deploymentHistoryFile", required = false)
+    protected String deploymentHistoryFile;
+
+    /**
+     * Factor applied to the 95th percentile of past deployment durations to derive the timeout.
+     */
+    @Parameter(property = "learnedTimeoutFactor", required = false, defaultValue = "3")
+    protected Double learnedTimeoutFactor;
+
+    /**
+     * Send only the top level fields which differ from the deployed app when updating it, and skip the update
+     * if nothing changed. Marathon merges them into the deployed config and validates the result.
+     */
+    @Parameter(property = "differentialUpdate", required = false, defaultValue = "false")
+    protected boolean differentialUpdate;
+
+    private Long pollDelayInMs;
+    private Long pollIntervalInMs;
+
+    /**
+     * Polls deployments at a fixed delay and interval instead of the default or learned ones, used by tests.
+     */
+    void overridePolling(long pollDelayInMs, long pollIntervalInMs) {
+        this.pollDelayInMs = pollDelayInMs;
+        this.pollIntervalInMs = pollIntervalInMs;
+    }
+
+    /**
+     * Creates the app or updates its config if it already exists.
+     */
+    protected void deployApp(Marathon marathon, App app) throws MojoExecutionException {
+        deployApp(marathon, app, differentialUpdate);
+    }
+
+    /**
+     * Creates the app or updates its config if it already exists.
+     *
+     * @param differential whether to send only the changed fields of an existing app and skip unchanged ones
+     */
+    protected void deployApp(Marathon marathon, App app, boolean differential) throws MojoExecutionException {
+        if (deploymentLockDirectory == null || deploymentLockDirectory.isEmpty()) {
+            deployUnlockedApp(marathon, app, differential);
+            return;
+        }
+
+        try (DeploymentLock lock = DeploymentLock.acquire(Paths.get(deploymentLockDirectory), app.getId(),
+                deploymentLockLeaseInSec, deploymentLockTimeoutInSec, getLog())) {
+            deployUnlockedApp(marathon, app, differential);
+            lock.checkHeld();
+        }
+    }
+
+    private void deployUnlockedApp(Marathon marathon, App app, boolean differential) throws MojoExecutionException {
+        if (appExists(marathon, app.getId())) {
+            getLog().info(app.getId() + " already exists - will be updated");
+            if (waitOnRunningDeployment) {
+                waitForRunningDeployment(marathon, app.getId());
+            }
+
+            updateApp(marathon, app, differential);
+        } else {
+            getLog().info(app.getId() + " does not exist yet - will be created");
+            createApp(marathon, app);
+        }
+    }
+
+    private void updateApp(Marathon marathon, App app, boolean differential) throws MojoExecutionException {
+        try {
+            final Stopwatch stopwatch = new Stopwatch().start();
+            final App currentApp = marathon.getApp(app.getId()).getApp();
+            final Set<String> changedFields = differential ? AppDiff.changedFields(app, currentApp) : null;
+            if (changedFields != null && changedFields.isEmpty()) {
+                getLog().info(app.getId() + " is unchanged - skipping update");
+                return;
+            }
+            if (changedFields != null) {
+                getLog().info("Updating changed fields " + changedFields + " of app " + app.getId());
+            }
+
+            final Result result = marathon.updateApp(app.getId(), changedFields == null ? app : AppDiff.partialApp(app, changedFields), false);
+            final String deployedVersion = result.getVersion();
+            getLog().info("Checking app " + app.getId() + " with new version " + deployedVersion + " for successful deployment... " +
+                    "(Id " + result.getDeploymentId() + ")");
+
+
+            final int instances = com.google.common.base.Objects.firstNonNull(app.getInstances(), currentApp.getInstances());
+            final long timeoutInSeconds = calculateTimeoutInSeconds(app.getId(), instances);
+            if (waitForSuccessfulDeployment) {
+                if (changedFields != null && changedFields.equals(Collections.singleton("instances"))) {
+                    // a scale-only change doesn't restart the running tasks, so they keep their version
+                    waitForSuccessfulScaling(marathon, app.getId(), stopwatch, deployedVersion, instances, timeoutInSeconds);
+                } else {
+                    waitForSuccessfulDeployment(marathon, app.getId(), stopwatch, deployedVersion, timeoutInSeconds);
+                }
+            }
+        } catch (MarathonException updateAppException) {
+            throw new MojoExecutionException("Failed to update Marathon config file at " + marathonHost, updateAppException);
+        }
+    }
+
+    private void createApp(Marathon marathon, App app) throws MojoExecutionException {
+        try {
+            final Stopwatch stopwatch = new Stopwatch().start();
+            final App deployedApp = marathon.createApp(app);
+            final long timeoutInSeconds = calculateTimeoutInSeconds(app.getId(), app.getInstances());
+            if (waitForSuccessfulDeployment) {
+                final Set<String> deployingVersions = loadCurrentlyDeployingVersions(marathon, deployedApp).stream()
+                        .collect(toSet());
+                if (deployingVersions.size() != 1) {
+                    throw new MojoExecutionException("Expected exactly one version for newly created app, but got " + deployingVersions);
+                }
+
+                waitForSuccessfulDeployment(marathon, deployedApp.getId(), stopwatch, getOnlyElement(deployingVersions), timeoutInSeconds);
+            }
+        } catch (MarathonException createAppException) {
+            throw new MojoExecutionException("Failed to push Marathon config file to " + marathonHost, createAppException);
+        }
+    }
+
+    protected void waitForRunningDeployment(final Marathon marathon, final String appId) throws MojoExecutionException {
+        try {
+            Awaitility.await()
+                    .pollInterval(5, TimeUnit.SECONDS)
+                    .atMost(waitOnRunningDeploymentTimeoutInSec, TimeUnit.SECONDS).until(() -> {
+                getLog().info("Checking app " + appId + " for deployments in progress...");
+                final Set<String> deployingAppVersions = marathon.getDeployments()
+                        .stream()
+                        .filter(e -> e.getAffectedApps().contains(appId))
+                        .map(Deployment::getVersion)
+                        .collect(toSet());
+
+                getLog().info("Checking app " + appId + ". Apps currently being deployed: "
+                        + deployingAppVersions.size() + ", versions: " + deployingAppVersions.toString());
+
+                return deployingAppVersions.isEmpty();
+            });
+        } catch (ConditionTimeoutException e) {
+            throw new MojoExecutionException("Previous deployment still hanging. Didn't finish in "
+                    + waitOnRunningDeploymentTimeoutInSec + " seconds", e);
+        }
+    }
+
+    protected long calculateTimeoutInSeconds(String appId, Integer instances) {
+        final DeploymentHistory.Estimate estimate = estimateDeployment(appId);
+        if (estimate != null) {
+            final long timeoutInSeconds = estimate.getTimeoutInSeconds(instances == null ? 1 : instances);
+            getLog().info("Using timeout of " + timeoutInSeconds + " seconds learned from previous deployments of app " + appId);
+            return timeoutInSeconds;
+        }
+        return waitForSuccessfulDeploymentTimeoutInSec * Math.max(1, instances == null ? 1 : instances);
+    }
+
+    private DeploymentHistory deploymentHistory() {
+        return deploymentHistoryFile == null || deploymentHistoryFile.isEmpty()
+                ? null
+                : new DeploymentHistory(Paths.get(deploymentHistoryFile), learnedTimeoutFactor, getLog());
+    }
+
+    private DeploymentHistory.Estimate estimateDeployment(String appId) {
+        final DeploymentHistory history = deploymentHistory();
+        return history == null ? null : history.estimate(appId);
+    }
+
+    /**
+     * Waits until all tasks of the app run the deployed version and are healthy.
+     */
+    protected void waitForSuccessfulDeployment(final Marathon marathon,
+                                               final String appId,
+                                               final Stopwatch stopwatch,
+                                               final String deployedVersion,
+                                               final long timeoutInSeconds) throws MojoExecutionException {
+        waitForSuccessfulDeployment(marathon, appId, stopwatch, deployedVersion,
+                task -> deployedVersion.equals(task.getVersion()), null, timeoutInSeconds);
+    }
+
+    /**
+     * Waits until the app runs exactly the expected number of healthy tasks. Tasks started before a scale-only
+     * change keep their old version, so every task counts towards the expected instances.
+     */
+    protected void waitForSuccessfulScaling(final Marathon marathon,
+                                            final String appId,
+                                            final Stopwatch stopwatch,
+                                            final String deployedVersion,
+                                            final int expectedInstances,
+                                            final long timeoutInSeconds) throws MojoExecutionException {
+        waitForSuccessfulDeployment(marathon, appId, stopwatch, deployedVersion, task -> true, expectedInstances, timeoutInSeconds);
+    }
+
+    private void waitForSuccessfulDeployment(final Marathon marathon,
+                                             final String appId,
+                                             final Stopwatch stopwatch,
+                                             final String deployedVersion,
+                                             final Predicate<Task> isTargetTask,
+                                             final Integer expectedInstances,
+                                             final long timeoutInSeconds) throws MojoExecutionException {
+        final ExtendedMarathon extendedMarathon = ExtendedMarathonClient.getInstance(marathonHost);
+        final OfferStarvationDetector offerStarvationDetector = offerStarvationTimeoutInSec != null && offerStarvationTimeoutInSec > 0
+                ? new OfferStarvationDetector(extendedMarathon, appId, offerStarvationTimeoutInSec, getLog())
+                : null;
+        final DeploymentHistory.Estimate estimate = estimateDeployment(appId);
+        if (estimate != null) {
+            getLog().info("Polling app " + appId + " based on previous deployments with " + estimate);
+        }
+        final Stopwatch totalStopwatch = new Stopwatch().start();
+        final AtomicInteger deployedInstances = new AtomicInteger();
+        final AtomicInteger targetInstances = new AtomicInteger(1);
+        final AtomicReference<String> lastAppState = new AtomicReference<>();
+        final AtomicReference<List<DeploymentStatus>> lastDeployments = new AtomicReference<>(Collections.emptyList());
+        final DeploymentProgress progress = new DeploymentProgress(appId);
+        try {
+            Awaitility.await()
+                    .pollDelay(pollDelayInMs != null ? pollDelayInMs
+                            : estimate == null ? TimeUnit.SECONDS.toMillis(10) : estimate.getPollDelayInMs(), TimeUnit.MILLISECONDS)
+                    .pollInterval(pollIntervalInMs != null ? pollIntervalInMs
+                            : estimate == null ? TimeUnit.SECONDS.toMillis(5) : estimate.getPollIntervalInMs(), TimeUnit.MILLISECONDS)
+                    .atMost(timeoutInSeconds, TimeUnit.SECONDS).until(() -> {
+
+                final GetAppResponse getAppResponse = marathon.getApp(appId);
+                final App deployingApp = getAppResponse.getApp();
+                final List<String> currentRunningVersions = extractCurrentRunningVersions(deployingApp);
+
+                final List<Task> targetTasks = deployingApp.getTasks()
+                        .stream()
+                        .filter(isTargetTask)
+                        .collect(toList());
+
+                final int instances = expectedInstances == null ? deployingApp.getInstances() : expectedInstances;
+                targetInstances.set(instances);
+                final boolean finished = Objects.equals(deployingApp.getTasksHealthy(), targetTasks.size())
+                        && Objects.equals(deployingApp.getTasks().size(), targetTasks.size())
+                        && instances == targetTasks.size();
+                final boolean checkDeployingVersion = targetTasks.isEmpty() && !Objects.equals(expectedInstances, 0);
+
+                // the deployments are only loaded to check the version or if the app changed while it is still deploying,
+                // otherwise the step of the previous poll is shown again
+                final boolean deploying = !finished && deployingApp.getDeployments() != null && !deployingApp.getDeployments().isEmpty();
+                final String appState = describeState(deployingApp, currentRunningVersions);
+                final List<DeploymentStatus> deployments;
+                if (checkDeployingVersion || (deploying && !appState.equals(lastAppState.get()))) {
+                    deployments = loadCurrentDeploymentStatuses(extendedMarathon, deployingApp);
+                } else if (deploying) {
+                    deployments = lastDeployments.get();
+                } else {
+                    deployments = Collections.emptyList();
+                }
+                lastAppState.set(appState);
+                lastDeployments.set(deployments);
+
+                if (checkDeployingVersion) {
+                    deployments.stream()
+                            .map(DeploymentStatus::getVersion)
+                            .filter(deployedVersion::equals)
+                            .findFirst()
+                            .orElseThrow(() -> new MojoExecutionException("No version " + deployedVersion + " and" +
+                                    " no running deployment found, running versions are " +
+                                    currentRunningVersions + ", deployment aborted."));
+                }
+
+                final List<HealthCheckResult> healthyNewInstances = deployingApp.getTasks()
+                        .stream()
+                        .filter(task -> task.getVersion().equals(deployedVersion))
+                        .flatMap(task -> task.getHealthCheckResults() == null ? Stream.of() : task.getHealthCheckResults().stream())
+                        .filter(HealthCheckResult::isAlive)
+                        .collect(toList());
+
+                if (!healthyNewInstances.isEmpty() && stopwatch.isRunning()) {
+                    stopwatch.stop();
+                    getLog().info("Time to first healthy instance is " + stopwatch.toString());
+                }
+
+                getLog().debug("Checking app " + appId +
+                        ". Running Tasks: " + deployingApp.getTasksRunning() +
+                        ", Staged tasks: " + deployingApp.getTasksStaged() +
+                        ", Unhealthy tasks: " + deployingApp.getTasksUnhealthy() +
+                        ", Healthy tasks: " + deployingApp.getTasksHealthy()
+                        + ". Current versions: " + currentRunningVersions.toString());
+
+                final long healthyTargetTasks = targetTasks.stream()
+                        .filter(task -> task.getHealthCheckResults() != null && task.getHealthCheckResults().stream().anyMatch(HealthCheckResult::isAlive))
+                        .count();
+                final DeploymentStatus deployment = deployments.stream()
+                        .filter(candidate -> deployedVersion.equals(candidate.getVersion()))
+                        .findFirst()
+                        .orElse(deployments.isEmpty() ? null : deployments.get(0));
+                final String progressLine = progress.update(deployingApp, healthyTargetTasks, instances, deployment);
+                if (progressLine != null) {
+                    getLog().info(progressLine);
+                }
+
+                if (offerStarvationDetector != null) {
+                    // the launch queue only matters while tasks are missing and none of them got an offer yet
+                    if (!finished && targetTasks.size() < instances
+                            && (deployingApp.getTasksStaged() == null || deployingApp.getTasksStaged() == 0)) {
+                        offerStarvationDetector.check(deployingApp);
+                    } else {
+                        offerStarvationDetector.reset();
+                    }
+                }
+                deployedInstances.set(targetTasks.size());
+                return finished;
+            });
+        } catch (ConditionTimeoutException e) {
+            // a timed out deployment counts with the full timeout, so a learned timeout that was too short grows
+            recordDeployment(appId, expectedInstances, stopwatch, TimeUnit.SECONDS.toMillis(timeoutInSeconds), targetInstances.get());
+            throw new MojoExecutionException("Current deployment still hanging. Didn't finish in "
+                    + timeoutInSeconds + " seconds", e);
+        }
+        recordDeployment(appId, expectedInstances, stopwatch, totalStopwatch.elapsedMillis(), deployedInstances.get());
+    }
+
+    /**
+     * Records the duration of a deployment which rolled out a new version. Scaling only starts or stops tasks and
+     * would pull the learned poll delay and interval towards zero.
+     */
+    private void recordDeployment(String appId, Integer expectedInstances, Stopwatch stopwatch, long totalInMs, int instances) {
+        final DeploymentHistory history = deploymentHistory();
+        if (history != null && expectedInstances == null) {
+            history.record(appId, stopwatch.isRunning() ? totalInMs : stopwatch.elapsedMillis(), totalInMs, instances);
+        }
+    }
+
+    protected List<String> loadCurrentlyDeployingVersions(final Marathon marathon, final App deployingApp) throws MarathonException {
+        return loadCurrentDeployments(marathon, deployingApp)
+                .stream()
+                .map(Deployment::getVersion)
+                .sorted()
+                .collect(toList());
+
+    }
+
+    private List<Deployment> loadCurrentDeployments(final Marathon marathon, final App deployingApp) throws MarathonException {
+        return marathon.getDeployments()
+                .stream()
+                .filter(deployment -> deployment.getAffectedApps().contains(deployingApp.getId()))
+                .collect(toList());
+    }
+
+    private List<DeploymentStatus> loadCurrentDeploymentStatuses(final ExtendedMarathon extendedMarathon,
+                                                                 final App deployingApp) throws MarathonException {
+        return extendedMarathon.getDeployments()
+                .stream()
+                .filter(deployment -> deployment.getAffectedApps().contains(deployingApp.getId()))
+                .collect(toList());
+    }
+
+    private String describeState(App deployingApp, List<String> currentRunningVersions) {
+        return deployingApp.getTasksStaged() + "/" + deployingApp.getTasksRunning() + "/" + deployingApp.getTasksHealthy()
+                + "/" + deployingApp.getTasksUnhealthy() + " " + currentRunningVersions + " "
+                + (deployingApp.getDeployments() == null ? "[]"
+                : deployingApp.getDeployments().stream().map(App.Deployment::getId).collect(toList()));
+    }
+
+    private List<String> extractCurrentRunningVersions(App deployingApp) {
+        return deployingApp.getTasks()
+                .stream()
+                .map(Task::getVersion)
+                .sorted()
+                .collect(toList());
+    }
+
+    /**
+     * Runs the given action for every app id on a pool of at most {@code parallelism} threads and fails
+     * after all actions completed if any of them failed.
+     */
+    protected void runInParallel(final List<String> appIds,
+                                 final int parallelism,
+                                 final AppAction action) throws MojoExecutionException {
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, appIds.size())));
+        try {
+            final Map<String, Future<Void>> futures = new LinkedHashMap<>();
+            for (final String appId : appIds) {
+                futures.put(appId, executor.submit(() -> {
+                    action.execute(appId);
+                    return null;
+                }));
+            }
+
+            final Map<String, Throwable> failures = new LinkedHashMap<>();
+            for (final Map.Entry<String, Future<Void>> future : futures.entrySet()) {
+                try {
+                    future.getValue().get();
+                } catch (ExecutionException e) {
+                    getLog().error("Failed to process app " + future.getKey(), e.getCause());
+                    failures.put(future.getKey(), e.getCause());
+                }
+            }
+
+            if (!failures.isEmpty()) {
+                throw new MojoExecutionException("Failed to process apps " + failures.keySet(), failures.values().iterator().next());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while processing apps " + appIds, e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @FunctionalInterface
+    protected interface AppAction {
+        void execute(String appId) throws MojoExecutionException;
+    }
+}
@@ -0,0 +1,65 @@
+/**
+ * Copyright (C) ${project.inceptionYear} Etaia AS (oss@hubrick.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hubrick.maven.marathon;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import mesosphere.marathon.client.model.v2.App;
+import mesosphere.marathon.client.utils.ModelUtils;
+
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compares an app definition with the deployed one. Top level fields which are not set in the definition are ignored,
+ * because Marathon fills in defaults for them. Set fields are compared as a whole including nested keys, because an
+ * update replaces them as a whole, so a nested key which was removed from the definition is a change as well.
+ */
+final class AppDiff {
+
+    private AppDiff() {
+    }
+
+    /**
+     * Returns the names of all top level fields of {@code desired} which differ from {@code deployed}.
+     */
+    static Set<String> changedFields(App desired, App deployed) {
+        final JsonObject desiredJson = ModelUtils.GSON.toJsonTree(desired).getAsJsonObject();
+        final JsonObject deployedJson = ModelUtils.GSON.toJsonTree(deployed).getAsJsonObject();
+        final Set<String> changedFields = new LinkedHashSet<>();
+        for (final Map.Entry<String, JsonElement> field : desiredJson.entrySet()) {
+            if (!field.getValue().isJsonNull() && !field.getValue().equals(deployedJson.get(field.getKey()))) {
+                changedFields.add(field.getKey());
+            }
+        }
+        return changedFields;
+    }
+
+    /**
+     * Returns an app with the id and the given fields of {@code desired} only, to be sent as partial update.
+     */
+    static App partialApp(App desired, Set<String> fields) {
+        final JsonObject desiredJson = ModelUtils.GSON.toJsonTree(desired).getAsJsonObject();
+        final JsonObject partialJson = new JsonObject();
+        for (final Map.Entry<String, JsonElement> field : desiredJson.entrySet()) {
+            if (field.getKey().equals("id") || fields.contains(field.getKey())) {
+                partialJson.add(field.getKey(), field.getValue());
+            }
+        }
+        return ModelUtils.GSON.fromJson(partialJson, App.class);
+    }
+}
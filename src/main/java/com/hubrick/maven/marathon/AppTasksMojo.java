@@ -17,12 +17,30 @@ package com.hubrick.maven.marathon;
 
 import static com.hubrick.maven.marathon.Utils.readApp;
 
+import com.google.common.base.Charsets;
+import com.google.gson.JsonObject;
 import mesosphere.marathon.client.Marathon;
 import mesosphere.marathon.client.MarathonClient;
 import mesosphere.marathon.client.model.v2.App;
-import mesosphere.marathon.client.model.v2.GetAppTasksResponse;
+import mesosphere.marathon.client.model.v2.HealthCheckResult;
 import mesosphere.marathon.client.model.v2.Task;
+import mesosphere.marathon.client.utils.ModelUtils;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Properties;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
@@ -36,6 +54,9 @@ import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProject;
 
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toList;
+
 /**
  * Sets maven parameters based on the app tasks.
  * 
@@ -48,10 +69,34 @@ import org.apache.maven.project.MavenProject;
  * prefix-host0 = somehost
  * prefix-port0-0 = 80
  * prefix-port0-1 = 443
+ *
+ * Tasks are sorted by host and ports and can be filtered by state and version.
+ * They can also be written to a JSON or properties file.
  */
 @Mojo(name = "apptasks", defaultPhase = LifecyclePhase.DEPLOY)
 public class AppTasksMojo extends AbstractMarathonMojo {
 
+    private static final List<String> TASK_STATES = Arrays.asList("all", "running", "healthy");
+    private static final Comparator<Task> TASK_ORDER = Comparator
+            .comparing(Task::getHost, Comparator.nullsFirst(Comparator.<String>naturalOrder()))
+            .thenComparing(Task::getPorts, AppTasksMojo::comparePorts)
+            .thenComparing(Task::getId, Comparator.nullsFirst(Comparator.<String>naturalOrder()));
+
+    /**
+     * Compares the ports numerically one by one, a task with fewer ports comes first if all of them are equal.
+     */
+    private static int comparePorts(Collection<Integer> ports, Collection<Integer> otherPorts) {
+        final Iterator<Integer> iterator = ports == null ? Collections.emptyIterator() : ports.iterator();
+        final Iterator<Integer> otherIterator = otherPorts == null ? Collections.emptyIterator() : otherPorts.iterator();
+        while (iterator.hasNext() && otherIterator.hasNext()) {
+            final int result = Comparator.nullsFirst(Comparator.<Integer>naturalOrder()).compare(iterator.next(), otherIterator.next());
+            if (result != 0) {
+                return result;
+            }
+        }
+        return Boolean.compare(iterator.hasNext(), otherIterator.hasNext());
+    }
+
     /**
      * URL of the marathon host as specified in pom.xml.
      */
@@ -71,11 +116,42 @@ public class AppTasksMojo extends AbstractMarathonMojo {
     @Parameter(property = "delay", required = false)
     private long delay = 0;
 
+    /**
+     * Only use tasks in this state: all, running (started) or healthy (all health checks alive).
+     */
+    @Parameter(property = "taskState", required = false, defaultValue = "all")
+    private String taskState = "all";
+
+    /**
+     * Only use tasks of this app version. Use "latest" for the most recent version of all tasks.
+     * By default tasks of all versions are used.
+     */
+    @Parameter(property = "taskVersion", required = false)
+    private String taskVersion;
+
+    /**
+     * File to write the tasks to. Files ending with .properties get the same properties as set on
+     * the project, all other files get the tasks as JSON.
+     */
+    @Parameter(property = "tasksFile", required = false)
+    private String tasksFile;
+
+    /**
+     * Whether to set the properties on the project. Disable it for apps with many tasks and use
+     * tasksFile instead.
+     */
+    @Parameter(property = "setProjectProperties", required = false, defaultValue = "true")
+    private boolean setProjectProperties = true;
+
     @Component
     private MavenProject project;
 
     @Override
     public void execute() throws MojoExecutionException, MojoFailureException {
+        if (!TASK_STATES.contains(taskState)) {
+            throw new MojoExecutionException("Invalid taskState " + taskState + ", expected one of " + TASK_STATES);
+        }
+
         final Marathon marathon = MarathonClient.getInstance(marathonHost);
         final App app = readApp(marathonConfigFile);
         getLog().info("tasks in Marathon instance for " + app.getId());
@@ -107,21 +183,28 @@ public class AppTasksMojo extends AbstractMarathonMojo {
 
     private void getAppTasks(Marathon marathon, App app) throws MojoExecutionException {
         try {
-            final GetAppTasksResponse getAppTasksResponse = marathon.getAppTasks(app.getId());
-            int taskCount = 0;
-            for (final Task task : getAppTasksResponse.getTasks()) {
-                final String hostPropertyName = propertyPrefix + "host" + taskCount;
-                project.getProperties().put(hostPropertyName, task.getHost());
-                getLog().info("Setting " + hostPropertyName + " = " + task.getHost());
-                int portCount = 0;
-                for (final Integer port : task.getPorts()) {
-                    final String portPropertyName = propertyPrefix + "port"
-                            + taskCount + "-" + portCount;
-                    project.getProperties().put(portPropertyName, String.valueOf(port));
-                    getLog().info("Setting " + portPropertyName + " = " + port);
-                    portCount++;
+            final Collection<Task> allTasks = marathon.getAppTasks(app.getId()).getTasks();
+            final String version = "latest".equals(taskVersion)
+                    ? allTasks.stream().map(Task::getVersion).filter(Objects::nonNull).max(Comparator.naturalOrder()).orElse(null)
+                    : taskVersion;
+            final List<Task> tasks = allTasks
+                    .stream()
+                    .filter(task -> version == null || version.isEmpty() || version.equals(task.getVersion()))
+                    .filter(task -> !"running".equals(taskState) || task.getStartedAt() != null)
+                    .filter(task -> !"healthy".equals(taskState) || isHealthy(task))
+                    .sorted(TASK_ORDER)
+                    .collect(toList());
+            getLog().info("Found " + tasks.size() + " " + taskState + " tasks of " + app.getId());
+
+            final Map<String, String> properties = toProperties(tasks);
+            if (setProjectProperties) {
+                for (final Map.Entry<String, String> property : properties.entrySet()) {
+                    project.getProperties().put(property.getKey(), property.getValue());
+                    getLog().info("Setting " + property.getKey() + " = " + property.getValue());
                 }
-                taskCount++;
+            }
+            if (tasksFile != null && !tasksFile.isEmpty()) {
+                writeTasksFile(app, tasks, properties);
             }
         } catch (Exception deleteAppException) {
             throw new MojoExecutionException("Failed to get tasks for Marathon instance "
@@ -129,4 +212,61 @@ public class AppTasksMojo extends AbstractMarathonMojo {
         }
     }
 
+    private Map<String, String> toProperties(List<Task> tasks) {
+        final Map<String, String> properties = new LinkedHashMap<>();
+        int taskCount = 0;
+        for (final Task task : tasks) {
+            properties.put(propertyPrefix + "host" + taskCount, task.getHost());
+            int portCount = 0;
+            for (final Integer port : task.getPorts()) {
+                properties.put(propertyPrefix + "port" + taskCount + "-" + portCount, String.valueOf(port));
+                portCount++;
+            }
+            taskCount++;
+        }
+        return properties;
+    }
+
+    private void writeTasksFile(App app, List<Task> tasks, Map<String, String> properties) throws IOException {
+        final Path file = Paths.get(tasksFile);
+        if (file.toAbsolutePath().getParent() != null) {
+            Files.createDirectories(file.toAbsolutePath().getParent());
+        }
+
+        final StringBuilder content = new StringBuilder();
+        if (tasksFile.endsWith(".properties")) {
+            content.append(toPropertiesLine(propertyPrefix + "count", String.valueOf(tasks.size())));
+            for (final Map.Entry<String, String> property : properties.entrySet()) {
+                content.append(toPropertiesLine(property.getKey(), property.getValue()));
+            }
+        } else {
+            final JsonObject json = new JsonObject();
+            json.addProperty("appId", app.getId());
+            json.add("tasks", ModelUtils.GSON.toJsonTree(tasks));
+            content.append(ModelUtils.GSON.toJson(json));
+        }
+        Files.write(file, content.toString().getBytes(Charsets.UTF_8));
+        getLog().info("Wrote " + tasks.size() + " tasks to " + file);
+    }
+
+    /**
+     * Escapes the property like {@link Properties#store(java.io.OutputStream, String)} but keeps the order of the
+     * entries and leaves out the date comment, so unchanged tasks give an unchanged file.
+     */
+    private static String toPropertiesLine(String key, String value) throws IOException {
+        final Properties property = new Properties();
+        property.setProperty(key, value);
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        property.store(out, null);
+        return Arrays.stream(new String(out.toByteArray(), Charsets.ISO_8859_1).split("\r?\n"))
+                .filter(line -> !line.startsWith("#"))
+                .collect(joining("\n", "", "\n"));
+    }
+
+    private static boolean isHealthy(Task task) {
+        return task.getHealthCheckResults() != null
+                && !task.getHealthCheckResults().isEmpty()
+                && task.getHealthCheckResults().stream().allMatch(HealthCheckResult::isAlive);
+    }
+
 }
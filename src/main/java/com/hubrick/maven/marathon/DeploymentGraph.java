@@ -0,0 +1,115 @@
+/**
+ * Copyright (C) ${project.inceptionYear} Etaia AS (oss@hubrick.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hubrick.maven.marathon;
+
+import mesosphere.marathon.client.model.v2.App;
+import org.apache.maven.plugin.MojoExecutionException;
+
+import java.net.URI;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Dependency graph of apps built from their "dependencies" field. Dependencies on apps outside of the graph are
+ * ignored because they are not deployed together with the graph. Every app id may only occur once.
+ */
+class DeploymentGraph {
+
+    private final Map<String, App> apps = new LinkedHashMap<>();
+    private final Map<String, Set<String>> dependencies = new LinkedHashMap<>();
+
+    DeploymentGraph(Collection<App> apps) throws MojoExecutionException {
+        for (final App app : apps) {
+            if (this.apps.put(app.getId(), app) != null) {
+                throw new MojoExecutionException("App " + app.getId() + " is defined more than once");
+            }
+        }
+        for (final App app : apps) {
+            final Set<String> appDependencies = new LinkedHashSet<>();
+            if (app.getDependencies() != null) {
+                for (final String dependency : app.getDependencies()) {
+                    final String dependencyId = resolveAppId(app.getId(), dependency);
+                    if (this.apps.containsKey(dependencyId)) {
+                        appDependencies.add(dependencyId);
+                    }
+                }
+            }
+            dependencies.put(app.getId(), appDependencies);
+        }
+    }
+
+    App getApp(String appId) {
+        return apps.get(appId);
+    }
+
+    Set<String> getDependencies(String appId) {
+        return dependencies.get(appId);
+    }
+
+    /**
+     * Returns all app ids so that every app comes after its dependencies.
+     */
+    List<String> topologicalOrder() throws MojoExecutionException {
+        final Map<String, Integer> missingDependencies = new LinkedHashMap<>();
+        final Map<String, List<String>> dependents = new LinkedHashMap<>();
+        for (final Map.Entry<String, Set<String>> entry : dependencies.entrySet()) {
+            missingDependencies.put(entry.getKey(), entry.getValue().size());
+            for (final String dependency : entry.getValue()) {
+                dependents.computeIfAbsent(dependency, key -> new ArrayList<>()).add(entry.getKey());
+            }
+        }
+
+        final Deque<String> ready = new ArrayDeque<>();
+        missingDependencies.forEach((appId, missing) -> {
+            if (missing == 0) {
+                ready.add(appId);
+            }
+        });
+
+        final List<String> order = new ArrayList<>();
+        while (!ready.isEmpty()) {
+            final String appId = ready.poll();
+            order.add(appId);
+            for (final String dependent : dependents.getOrDefault(appId, new ArrayList<>())) {
+                if (missingDependencies.merge(dependent, -1, Integer::sum) == 0) {
+                    ready.add(dependent);
+                }
+            }
+        }
+
+        if (order.size() != apps.size()) {
+            final Set<String> cycle = new LinkedHashSet<>(apps.keySet());
+            cycle.removeAll(order);
+            throw new MojoExecutionException("Cyclic dependencies between apps " + cycle);
+        }
+        return order;
+    }
+
+    static String resolveAppId(String appId, String dependency) {
+        if (dependency.startsWith("/")) {
+            return dependency;
+        }
+        final String parent = appId.substring(0, appId.lastIndexOf('/') + 1);
+        return URI.create(parent).resolve(dependency).normalize().getPath();
+    }
+}
@@ -0,0 +1,176 @@
+/**
+ * Copyright (C) ${project.inceptionYear} Etaia AS (oss@hubrick.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hubrick.maven.marathon;
+
+import com.google.common.base.Charsets;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+import mesosphere.marathon.client.utils.ModelUtils;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.lang.reflect.Type;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.ToLongFunction;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Rolling statistics of past deployments per app, kept in a local JSON file. They are used to estimate when
+ * a deployment becomes healthy and how long it may take at most.
+ */
+class DeploymentHistory {
+
+    static final int MAX_SAMPLES = 20;
+    static final int MIN_SAMPLES = 3;
+
+    private static final Type SAMPLES_TYPE = new TypeToken<LinkedHashMap<String, List<Sample>>>() { }.getType();
+    private static final long MIN_POLL_INTERVAL_IN_MS = TimeUnit.SECONDS.toMillis(1);
+    private static final long MAX_POLL_INTERVAL_IN_MS = TimeUnit.SECONDS.toMillis(5);
+    private static final long MIN_TIMEOUT_IN_SEC = 60;
+
+    private final Path file;
+    private final double timeoutFactor;
+    private final Log log;
+
+    DeploymentHistory(Path file, double timeoutFactor, Log log) {
+        this.file = file;
+        this.timeoutFactor = timeoutFactor;
+        this.log = log;
+    }
+
+    /**
+     * Returns the estimate for the app or {@code null} if there are not enough samples yet.
+     */
+    Estimate estimate(String appId) {
+        final List<Sample> samples = load().get(appId);
+        if (samples == null || samples.size() < MIN_SAMPLES) {
+            return null;
+        }
+        return new Estimate(samples, timeoutFactor);
+    }
+
+    void record(String appId, long timeToFirstHealthyInMs, long totalInMs, int instances) {
+        synchronized (DeploymentHistory.class) {
+            final Map<String, List<Sample>> history = load();
+            final List<Sample> samples = history.computeIfAbsent(appId, key -> new ArrayList<>());
+            samples.add(new Sample(timeToFirstHealthyInMs, totalInMs, instances));
+            while (samples.size() > MAX_SAMPLES) {
+                samples.remove(0);
+            }
+
+            try {
+                Files.createDirectories(file.toAbsolutePath().getParent());
+                final Path temporaryFile = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+                try (Writer writer = Files.newBufferedWriter(temporaryFile, Charsets.UTF_8)) {
+                    ModelUtils.GSON.toJson(history, SAMPLES_TYPE, writer);
+                }
+                Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                log.warn("Failed to write deployment history " + file, e);
+            }
+        }
+    }
+
+    private Map<String, List<Sample>> load() {
+        if (!Files.exists(file)) {
+            return new LinkedHashMap<>();
+        }
+        try (Reader reader = Files.newBufferedReader(file, Charsets.UTF_8)) {
+            final Map<String, List<Sample>> history = ModelUtils.GSON.fromJson(reader, SAMPLES_TYPE);
+            return history == null ? new LinkedHashMap<>() : history;
+        } catch (IOException | JsonParseException e) {
+            log.warn("Ignoring unreadable deployment history " + file, e);
+            return new LinkedHashMap<>();
+        }
+    }
+
+    static final class Sample {
+
+        private final long timeToFirstHealthyInMs;
+        private final long totalInMs;
+        private final int instances;
+
+        Sample(long timeToFirstHealthyInMs, long totalInMs, int instances) {
+            this.timeToFirstHealthyInMs = timeToFirstHealthyInMs;
+            this.totalInMs = totalInMs;
+            this.instances = instances;
+        }
+
+        long getTimeToFirstHealthyInMs() {
+            return timeToFirstHealthyInMs;
+        }
+
+        long getTotalInMs() {
+            return totalInMs;
+        }
+
+        long getTimePerInstanceInMs() {
+            return totalInMs / Math.max(1, instances);
+        }
+    }
+
+    static final class Estimate {
+
+        private final long pollDelayInMs;
+        private final long pollIntervalInMs;
+        private final long timePerInstanceInMs;
+        private final double timeoutFactor;
+
+        private Estimate(List<Sample> samples, double timeoutFactor) {
+            // start polling when the fastest deployments became healthy
+            this.pollDelayInMs = percentile(samples, Sample::getTimeToFirstHealthyInMs, 0.1);
+            this.pollIntervalInMs = Math.min(MAX_POLL_INTERVAL_IN_MS,
+                    Math.max(MIN_POLL_INTERVAL_IN_MS, percentile(samples, Sample::getTotalInMs, 0.5) / 20));
+            this.timePerInstanceInMs = percentile(samples, Sample::getTimePerInstanceInMs, 0.95);
+            this.timeoutFactor = timeoutFactor;
+        }
+
+        long getPollDelayInMs() {
+            return pollDelayInMs;
+        }
+
+        long getPollIntervalInMs() {
+            return pollIntervalInMs;
+        }
+
+        long getTimeoutInSeconds(int instances) {
+            final long timeoutInMs = (long) (timePerInstanceInMs * Math.max(1, instances) * timeoutFactor);
+            return Math.max(MIN_TIMEOUT_IN_SEC, TimeUnit.MILLISECONDS.toSeconds(timeoutInMs));
+        }
+
+        private static long percentile(List<Sample> samples, ToLongFunction<Sample> value, double fraction) {
+            final List<Long> values = samples.stream().map(value::applyAsLong).sorted().collect(toList());
+            final int rank = (int) Math.ceil(fraction * values.size());
+            return values.get(Math.min(values.size(), Math.max(1, rank)) - 1);
+        }
+
+        @Override
+        public String toString() {
+            return "pollDelay=" + pollDelayInMs + "ms, pollInterval=" + pollIntervalInMs + "ms, p95 time per instance="
+                    + timePerInstanceInMs + "ms";
+        }
+    }
+}
@@ -0,0 +1,267 @@
+/**
+ * Copyright (C) ${project.inceptionYear} Etaia AS (oss@hubrick.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hubrick.maven.marathon;
+
+import com.google.common.base.Charsets;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Advisory lock per app on a directory shared by all deploying builds. Every deployer adds a ticket file to the
+ * queue directory of the app. The deployer whose ticket is the oldest one acquires the lock by atomically creating
+ * the holder file, which names its ticket, so clock skew between hosts can only affect the order but never let two
+ * deployers hold the lock. Tickets and the holder file are leased: the owner renews their modification time, expired
+ * ones are removed by the other deployers. Waiting deployers are woken up when a file of the queue is removed locally,
+ * releases on other hosts of a network file system are noticed by polling.
+ */
+final class DeploymentLock implements AutoCloseable {
+
+    private static final String TICKET_SUFFIX = ".lock";
+    private static final String HOLDER_FILE = "holder";
+    private static final long RELEASE_POLL_INTERVAL_IN_MS = TimeUnit.SECONDS.toMillis(2);
+
+    private final Path ticket;
+    private final Path holder;
+    private final ScheduledExecutorService renewal;
+    private volatile boolean held;
+    private volatile boolean lost;
+
+    private DeploymentLock(Path ticket, Path holder, ScheduledExecutorService renewal) {
+        this.ticket = ticket;
+        this.holder = holder;
+        this.renewal = renewal;
+    }
+
+    static DeploymentLock acquire(Path lockDirectory,
+                                  String appId,
+                                  long leaseInSec,
+                                  long timeoutInSec,
+                                  Log log) throws MojoExecutionException {
+        return acquire(lockDirectory, appId, leaseInSec, timeoutInSec, log, System.currentTimeMillis());
+    }
+
+    /**
+     * @param ticketTimeInMs the time the ticket is named after, only differs from the current time in tests
+     */
+    static DeploymentLock acquire(Path lockDirectory,
+                                  String appId,
+                                  long leaseInSec,
+                                  long timeoutInSec,
+                                  Log log,
+                                  long ticketTimeInMs) throws MojoExecutionException {
+        final Path queue = lockDirectory.resolve(appId.replaceAll("^/+", "").replace('/', '_'));
+        final Path ticket;
+        try {
+            Files.createDirectories(queue);
+            ticket = queue.resolve(String.format("%013d-%s%s", ticketTimeInMs, UUID.randomUUID(), TICKET_SUFFIX));
+            Files.write(ticket, describeOwner().getBytes(Charsets.UTF_8), StandardOpenOption.CREATE_NEW);
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to enqueue for the deployment lock of app " + appId + " in " + lockDirectory, e);
+        }
+
+        final ScheduledExecutorService renewal = Executors.newSingleThreadScheduledExecutor();
+        final DeploymentLock lock = new DeploymentLock(ticket, queue.resolve(HOLDER_FILE), renewal);
+        renewal.scheduleAtFixedRate(() -> lock.renew(log), 0, Math.max(1, leaseInSec * 1000 / 3), TimeUnit.MILLISECONDS);
+
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            queue.register(watchService, StandardWatchEventKinds.ENTRY_DELETE);
+            final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(timeoutInSec);
+            while (true) {
+                final List<Path> tickets = loadLiveTickets(queue, ticket, leaseInSec, log);
+                final int position = tickets.indexOf(ticket);
+                if (position == 0 && lock.tryHold(leaseInSec, log)) {
+                    log.info("Acquired deployment lock for app " + appId);
+                    return lock;
+                }
+
+                final long remainingInMs = deadline - System.currentTimeMillis();
+                if (remainingInMs <= 0) {
+                    lock.close();
+                    throw new MojoExecutionException("Deployment lock for app " + appId + " still held by "
+                            + describeHolder(lock.holder, tickets) + ". Didn't get it in " + timeoutInSec + " seconds");
+                }
+
+                // the head of the queue waits for a holder whose ticket sorts after its own
+                log.info("Waiting for deployment lock of app " + appId + " held by " + describeHolder(lock.holder, tickets)
+                        + ", " + Math.max(1, position) + " deployment(s) ahead");
+                // woken up on local releases, polling notices releases on other hosts and expired leases
+                final WatchKey key = watchService.poll(Math.min(remainingInMs,
+                        Math.min(RELEASE_POLL_INTERVAL_IN_MS, TimeUnit.SECONDS.toMillis(leaseInSec))), TimeUnit.MILLISECONDS);
+                if (key != null) {
+                    key.pollEvents();
+                    key.reset();
+                }
+            }
+        } catch (IOException e) {
+            lock.close();
+            throw new MojoExecutionException("Failed to acquire the deployment lock of app " + appId + " in " + lockDirectory, e);
+        } catch (InterruptedException e) {
+            lock.close();
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while waiting for the deployment lock of app " + appId, e);
+        }
+    }
+
+    /**
+     * Creates the holder file unless another deployer holds the lock. An expired holder file is moved away first
+     * and only deleted if it is still expired after the move. Otherwise it was renewed in between and is linked
+     * back, unless another deployer took the lock in the meantime, then its owner loses the lock.
+     */
+    private boolean tryHold(long leaseInSec, Log log) throws IOException {
+        final long expiredBefore = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(leaseInSec);
+        try {
+            if (Files.getLastModifiedTime(holder).toMillis() < expiredBefore) {
+                final Path expired = holder.resolveSibling(HOLDER_FILE + "-" + UUID.randomUUID() + ".expired");
+                Files.move(holder, expired, StandardCopyOption.ATOMIC_MOVE);
+                if (Files.getLastModifiedTime(expired).toMillis() < expiredBefore) {
+                    log.warn("Removing expired deployment lock of " + readOwner(holder.resolveSibling(readOwner(expired))));
+                    Files.delete(expired);
+                } else {
+                    try {
+                        Files.createLink(holder, expired);
+                    } catch (FileAlreadyExistsException e) {
+                        log.warn("Deployment lock of " + readOwner(holder.resolveSibling(readOwner(expired)))
+                                + " was renewed too late and taken over in the meantime");
+                    } finally {
+                        Files.delete(expired);
+                    }
+                    return false;
+                }
+            }
+        } catch (NoSuchFileException e) {
+            // not held or released concurrently
+        }
+
+        try {
+            Files.write(holder, ticket.getFileName().toString().getBytes(Charsets.UTF_8), StandardOpenOption.CREATE_NEW);
+            held = true;
+            return true;
+        } catch (FileAlreadyExistsException e) {
+            return false;
+        }
+    }
+
+    private void renew(Log log) {
+        try {
+            if (held) {
+                if (!ticket.getFileName().toString().equals(readOwner(holder))) {
+                    log.error("Lost deployment lock " + holder + " because its lease expired, another deployment may run concurrently");
+                    held = false;
+                    lost = true;
+                } else {
+                    Files.setLastModifiedTime(holder, FileTime.fromMillis(System.currentTimeMillis()));
+                }
+            }
+            Files.setLastModifiedTime(ticket, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (NoSuchFileException e) {
+            // released in the meantime
+        } catch (IOException e) {
+            log.warn("Failed to renew deployment lock " + ticket, e);
+        }
+    }
+
+    /**
+     * Fails if the lease of the lock expired while it was held, so that another deployer may have taken it over.
+     */
+    void checkHeld() throws MojoExecutionException {
+        if (lost) {
+            throw new MojoExecutionException("Lost the deployment lock " + holder + " because its lease expired while deploying,"
+                    + " another deployment may have run concurrently");
+        }
+    }
+
+    private static String describeHolder(Path holder, List<Path> tickets) {
+        if (Files.exists(holder)) {
+            return readOwner(holder.resolveSibling(readOwner(holder)));
+        }
+        return tickets.isEmpty() ? "nobody" : readOwner(tickets.get(0));
+    }
+
+    private static List<Path> loadLiveTickets(Path queue, Path ownTicket, long leaseInSec, Log log) throws IOException {
+        final long expiredBefore = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(leaseInSec);
+        final List<Path> tickets = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(queue, "*" + TICKET_SUFFIX)) {
+            for (final Path ticket : stream) {
+                try {
+                    if (!ticket.equals(ownTicket) && Files.getLastModifiedTime(ticket).toMillis() < expiredBefore) {
+                        log.warn("Removing expired deployment lock " + ticket + " of " + readOwner(ticket));
+                        Files.deleteIfExists(ticket);
+                    } else {
+                        tickets.add(ticket);
+                    }
+                } catch (NoSuchFileException e) {
+                    // released concurrently
+                }
+            }
+        }
+        Collections.sort(tickets);
+        return tickets;
+    }
+
+    private static String readOwner(Path ticket) {
+        try {
+            return new String(Files.readAllBytes(ticket), Charsets.UTF_8);
+        } catch (IOException e) {
+            return ticket.getFileName().toString();
+        }
+    }
+
+    private static String describeOwner() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (IOException e) {
+            host = "unknown host";
+        }
+        return System.getProperty("user.name") + "@" + host;
+    }
+
+    @Override
+    public void close() {
+        renewal.shutdownNow();
+        try {
+            if (held && ticket.getFileName().toString().equals(readOwner(holder))) {
+                Files.deleteIfExists(holder);
+            }
+            held = false;
+            Files.deleteIfExists(ticket);
+        } catch (IOException e) {
+            // the lease of the ticket expires anyway
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * Copyright (C) ${project.inceptionYear} Etaia AS (oss@hubrick.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hubrick.maven.marathon;
+
+import com.google.common.base.Stopwatch;
+import mesosphere.marathon.client.model.v2.App;
+import mesosphere.marathon.client.model.v2.Task;
+
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.stream.Collectors.joining;
+import static java.util.stream.Collectors.toCollection;
+
+/**
+ * Summarizes the progress of a deployment from its current step and the rate at which target tasks became healthy
+ * so far. A summary is only returned if the deployment state changed since the previous one.
+ */
+class DeploymentProgress {
+
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss");
+
+    private final String appId;
+    private final Stopwatch stopwatch = new Stopwatch().start();
+
+    private int initialHealthyTasks = -1;
+    private String lastState;
+
+    DeploymentProgress(String appId) {
+        this.appId = appId;
+    }
+
+    /**
+     * Returns the progress line or {@code null} if nothing changed since the last call.
+     *
+     * @param deployment the running deployment of the app or {@code null} if it is unknown
+     */
+    String update(App app, long healthyTargetTasks, int expectedInstances, DeploymentStatus deployment) {
+        final Set<String> versions = app.getTasks().stream().map(Task::getVersion).collect(toCollection(TreeSet::new));
+        final StringBuilder state = new StringBuilder("Deployment of ").append(appId).append(':');
+        if (deployment != null && deployment.getCurrentStep() != null && deployment.getTotalSteps() != null) {
+            state.append(" step ").append(deployment.getCurrentStep()).append('/').append(deployment.getTotalSteps());
+            final String actions = deployment.getCurrentActions() == null ? "" : deployment.getCurrentActions().stream()
+                    .map(DeploymentStatus.CurrentAction::getAction)
+                    .filter(Objects::nonNull)
+                    .distinct()
+                    .collect(joining(", "));
+            if (!actions.isEmpty()) {
+                state.append(" (").append(actions).append(')');
+            }
+            state.append(',');
+        }
+        state.append(' ').append(healthyTargetTasks).append('/').append(expectedInstances).append(" healthy")
+                .append(", ").append(app.getTasksStaged()).append(" staged")
+                .append(", ").append(app.getTasksUnhealthy()).append(" unhealthy")
+                .append(", versions ").append(versions);
+
+        if (initialHealthyTasks < 0) {
+            initialHealthyTasks = (int) healthyTargetTasks;
+        }
+        if (state.toString().equals(lastState)) {
+            return null;
+        }
+        lastState = state.toString();
+
+        final double taskFraction = expectedInstances == 0 ? 1 : Math.min(1, (double) healthyTargetTasks / expectedInstances);
+        final double fraction = deployment != null && deployment.getCurrentStep() != null
+                && deployment.getTotalSteps() != null && deployment.getTotalSteps() > 0
+                ? (deployment.getCurrentStep() - 1 + taskFraction) / deployment.getTotalSteps()
+                : taskFraction;
+        return lastState + ". " + Math.round(fraction * 100) + "% done" + eta(healthyTargetTasks, expectedInstances);
+    }
+
+    private String eta(long healthyTargetTasks, int expectedInstances) {
+        final long remaining = expectedInstances - healthyTargetTasks;
+        final long transitions = healthyTargetTasks - initialHealthyTasks;
+        if (remaining <= 0) {
+            return "";
+        } else if (transitions <= 0) {
+            return ", no estimated completion yet";
+        }
+        final long etaInMs = stopwatch.elapsedMillis() * remaining / transitions;
+        return ", estimated completion in " + TimeUnit.MILLISECONDS.toSeconds(etaInMs) + "s at "
+                + LocalTime.now().plus(etaInMs, ChronoUnit.MILLIS).format(TIME_FORMAT);
+    }
+}
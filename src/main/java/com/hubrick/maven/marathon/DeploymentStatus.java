@@ -0,0 +1,70 @@
+/**
+ * Copyright (C) ${project.inceptionYear} Etaia AS (oss@hubrick.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hubrick.maven.marathon;
+
+import java.util.List;
+
+/**
+ * Entry of /v2/deployments including the names of the current actions, which Marathon reports as {@code action}
+ * while the marathon-client only maps {@code type}.
+ */
+class DeploymentStatus {
+
+    private String id;
+    private String version;
+    private List<String> affectedApps;
+    private Integer currentStep;
+    private Integer totalSteps;
+    private List<CurrentAction> currentActions;
+
+    String getId() {
+        return id;
+    }
+
+    String getVersion() {
+        return version;
+    }
+
+    List<String> getAffectedApps() {
+        return affectedApps;
+    }
+
+    Integer getCurrentStep() {
+        return currentStep;
+    }
+
+    Integer getTotalSteps() {
+        return totalSteps;
+    }
+
+    List<CurrentAction> getCurrentActions() {
+        return currentActions;
+    }
+
+    static class CurrentAction {
+
+        private String action;
+        private String app;
+
+        String getAction() {
+            return action;
+        }
+
+        String getApp() {
+            return app;
+        }
+    }
+}
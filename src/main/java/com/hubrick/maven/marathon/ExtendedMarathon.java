@@ -0,0 +1,46 @@
+/**
+ * Copyright (C) ${project.inceptionYear} Etaia AS (oss@hubrick.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hubrick.maven.marathon;
+
+import feign.Headers;
+import feign.Param;
+import feign.RequestLine;
+import mesosphere.marathon.client.model.v2.Result;
+import mesosphere.marathon.client.utils.MarathonException;
+
+import java.util.List;
+
+/**
+ * Marathon endpoints which are not or only partially covered by the marathon-client.
+ */
+@Headers({"Content-Type: application/json", "Accept: application/json"})
+interface ExtendedMarathon {
+
+    /**
+     * Unlike the marathon-client, maps the names of the current actions.
+     */
+    @RequestLine("GET /v2/deployments")
+    List<DeploymentStatus> getDeployments() throws MarathonException;
+
+    @RequestLine("GET /v2/queue")
+    LaunchQueue getQueue() throws MarathonException;
+
+    /**
+     * Unlike the marathon-client, returns the version and deployment id of the restart.
+     */
+    @RequestLine("POST /v2/apps/{id}/restart?force={force}")
+    Result restartApp(@Param("id") String id, @Param("force") boolean force) throws MarathonException;
+}
@@ -0,0 +1,36 @@
+/**
+ * Copyright (C) ${project.inceptionYear} Etaia AS (oss@hubrick.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hubrick.maven.marathon;
+
+import feign.Feign;
+import feign.gson.GsonDecoder;
+import feign.gson.GsonEncoder;
+import mesosphere.marathon.client.utils.MarathonException;
+import mesosphere.marathon.client.utils.ModelUtils;
+
+final class ExtendedMarathonClient {
+
+    private ExtendedMarathonClient() {
+    }
+
+    static ExtendedMarathon getInstance(String endpoint) {
+        return Feign.builder()
+                .encoder(new GsonEncoder(ModelUtils.GSON))
+                .decoder(new GsonDecoder(ModelUtils.GSON))
+                .errorDecoder((methodKey, response) -> new MarathonException(response.status(), response.reason()))
+                .target(ExtendedMarathon.class, endpoint);
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright (C) ${project.inceptionYear} Etaia AS (oss@hubrick.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hubrick.maven.marathon;
+
+import mesosphere.marathon.client.model.v2.App;
+import mesosphere.marathon.client.model.v2.Delay;
+
+import java.util.List;
+
+/**
+ * Response of /v2/queue including the offer summary which Marathon 1.4+ reports for every queued app.
+ */
+class LaunchQueue {
+
+    private List<QueuedApp> queue;
+
+    List<QueuedApp> getQueue() {
+        return queue;
+    }
+
+    static class QueuedApp {
+
+        private App app;
+        private int count;
+        private Delay delay;
+        private ProcessedOffersSummary processedOffersSummary;
+
+        App getApp() {
+            return app;
+        }
+
+        int getCount() {
+            return count;
+        }
+
+        Delay getDelay() {
+            return delay;
+        }
+
+        ProcessedOffersSummary getProcessedOffersSummary() {
+            return processedOffersSummary;
+        }
+    }
+
+    static class ProcessedOffersSummary {
+
+        private int processedOffersCount;
+        private int unusedOffersCount;
+        private List<DeclineReason> rejectSummaryLastOffers;
+
+        int getProcessedOffersCount() {
+            return processedOffersCount;
+        }
+
+        int getUnusedOffersCount() {
+            return unusedOffersCount;
+        }
+
+        List<DeclineReason> getRejectSummaryLastOffers() {
+            return rejectSummaryLastOffers;
+        }
+    }
+
+    static class DeclineReason {
+
+        private String reason;
+        private int declined;
+        private int processed;
+
+        String getReason() {
+            return reason;
+        }
+
+        int getDeclined() {
+            return declined;
+        }
+
+        int getProcessed() {
+            return processed;
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * Copyright (C) ${project.inceptionYear} Etaia AS (oss@hubrick.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hubrick.maven.marathon;
+
+import com.google.common.base.Stopwatch;
+import mesosphere.marathon.client.model.v2.App;
+import mesosphere.marathon.client.utils.MarathonException;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.stream.Collectors.joining;
+
+/**
+ * Watches the launch queue while a deployment is in progress and fails once Marathon declined the offers for an
+ * app queued without staged tasks for longer than the configured timeout. Apps in launch backoff are not considered
+ * starving because their tasks were launched but failed. Marathon before 1.4 doesn't report declined offers, so
+ * there an app is never considered starving.
+ */
+class OfferStarvationDetector {
+
+    private final ExtendedMarathon marathon;
+    private final String appId;
+    private final long timeoutInSeconds;
+    private final Log log;
+
+    private final Stopwatch starvingSince = new Stopwatch();
+    private int lastQueuedCount = -1;
+
+    OfferStarvationDetector(ExtendedMarathon marathon, String appId, long timeoutInSeconds, Log log) {
+        this.marathon = marathon;
+        this.appId = appId;
+        this.timeoutInSeconds = timeoutInSeconds;
+        this.log = log;
+    }
+
+    void check(App deployingApp) throws MojoExecutionException {
+        final Optional<LaunchQueue.QueuedApp> queuedApp;
+        try {
+            final List<LaunchQueue.QueuedApp> queue = marathon.getQueue().getQueue();
+            queuedApp = queue == null ? Optional.empty() : queue.stream()
+                    .filter(element -> element.getApp() != null && appId.equals(element.getApp().getId()))
+                    .findFirst();
+        } catch (MarathonException | RuntimeException e) {
+            log.debug("Failed to load launch queue for app " + appId, e);
+            return;
+        }
+
+        final boolean starving = queuedApp.isPresent()
+                && queuedApp.get().getCount() > 0
+                && !isInBackoff(queuedApp.get())
+                && (deployingApp.getTasksStaged() == null || deployingApp.getTasksStaged() == 0)
+                && offersDeclined(queuedApp.get());
+        if (!starving) {
+            reset();
+            return;
+        }
+
+        if (!starvingSince.isRunning() || queuedApp.get().getCount() != lastQueuedCount) {
+            lastQueuedCount = queuedApp.get().getCount();
+            starvingSince.reset().start();
+            return;
+        }
+
+        final long starvingForSeconds = starvingSince.elapsedTime(TimeUnit.SECONDS);
+        log.info("App " + appId + " has " + lastQueuedCount + " tasks waiting for offers since " + starvingForSeconds + " seconds. "
+                + describeDeclineReasons(queuedApp.get()));
+        if (starvingForSeconds >= timeoutInSeconds) {
+            throw new MojoExecutionException("App " + appId + " got no matching offer for " + lastQueuedCount
+                    + " queued tasks within " + starvingForSeconds + " seconds, deployment aborted. "
+                    + describeDeclineReasons(queuedApp.get()) + " " + describeRequirements(queuedApp.get().getApp()));
+        }
+    }
+
+    /**
+     * Restarts the timeout, e.g. because tasks got staged in the meantime.
+     */
+    void reset() {
+        lastQueuedCount = -1;
+        starvingSince.reset();
+    }
+
+    private static boolean isInBackoff(LaunchQueue.QueuedApp queuedApp) {
+        return queuedApp.getDelay() != null && queuedApp.getDelay().getTimeLeftSeconds() > 0;
+    }
+
+    private static boolean offersDeclined(LaunchQueue.QueuedApp queuedApp) {
+        return queuedApp.getProcessedOffersSummary() != null && queuedApp.getProcessedOffersSummary().getUnusedOffersCount() > 0;
+    }
+
+    private static String describeDeclineReasons(LaunchQueue.QueuedApp queuedApp) {
+        final LaunchQueue.ProcessedOffersSummary summary = queuedApp.getProcessedOffersSummary();
+        if (summary.getRejectSummaryLastOffers() == null) {
+            return "Declined " + summary.getUnusedOffersCount() + " of " + summary.getProcessedOffersCount() + " offers.";
+        }
+
+        final String reasons = summary.getRejectSummaryLastOffers()
+                .stream()
+                .filter(reason -> reason.getDeclined() > 0)
+                .sorted(Comparator.comparing(LaunchQueue.DeclineReason::getDeclined).reversed())
+                .map(reason -> reason.getReason() + " (" + reason.getDeclined() + " of " + reason.getProcessed() + ")")
+                .collect(joining(", "));
+        return "Declined " + summary.getUnusedOffersCount() + " of " + summary.getProcessedOffersCount() + " offers"
+                + (reasons.isEmpty() ? "." : " due to: " + reasons + ".");
+    }
+
+    private static String describeRequirements(App app) {
+        return "Requested cpus=" + app.getCpus()
+                + ", mem=" + app.getMem()
+                + ", constraints=" + app.getConstraints()
+                + ", acceptedResourceRoles=" + app.getAcceptedResourceRoles();
+    }
+}
@@ -0,0 +1,195 @@
+/**
+ * Copyright (C) ${project.inceptionYear} Etaia AS (oss@hubrick.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hubrick.maven.marathon;
+
+import mesosphere.marathon.client.Marathon;
+import mesosphere.marathon.client.MarathonClient;
+import mesosphere.marathon.client.model.v2.App;
+import org.apache.maven.execution.BuildFailure;
+import org.apache.maven.execution.MavenExecutionRequest;
+import org.apache.maven.execution.ProjectDependencyGraph;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.hubrick.maven.marathon.Utils.readApp;
+import static java.util.stream.Collectors.toCollection;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Collects the Marathon config of every module of the reactor and deploys all apps once the last module was built.
+ * Apps are deployed in the order of their "dependencies", independent apps are deployed in parallel.
+ */
+@Mojo(name = "reactor-deploy", defaultPhase = LifecyclePhase.DEPLOY, threadSafe = true)
+public class ReactorDeployMojo extends AbstractMarathonDeploymentMojo {
+
+    private static final Map<MavenExecutionRequest, Map<String, App>> COLLECTED_APPS = new WeakHashMap<>();
+
+    /**
+     * Max number of apps which are deployed concurrently.
+     */
+    @Parameter(property = "parallelism", required = false, defaultValue = "4")
+    private Integer parallelism;
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        final List<String> projectsBindingGoal = projectsBindingGoal();
+        final MavenProject currentProject = session.getCurrentProject();
+        final App app;
+        if (projectsBindingGoal.isEmpty() && !Files.exists(Paths.get(marathonConfigFile))) {
+            // invoked from the command line, modules without a config like the parent have nothing to deploy
+            getLog().info("no Marathon config at " + marathonConfigFile + " - nothing to collect");
+            app = null;
+        } else {
+            app = readApp(marathonConfigFile);
+            getLog().info("collected Marathon config for " + app.getId() + " from " + marathonConfigFile);
+        }
+
+        // invoked from the command line, so every module of the reactor runs the goal
+        final List<MavenProject> expectedProjects = projectsBindingGoal.isEmpty()
+                ? session.getProjects()
+                : session.getProjects().stream().filter(project -> projectsBindingGoal.contains(project.getId())).collect(toList());
+        final Map<String, App> apps;
+        synchronized (COLLECTED_APPS) {
+            final Map<String, App> collectedApps = COLLECTED_APPS.computeIfAbsent(session.getRequest(), key -> new LinkedHashMap<>());
+            collectedApps.put(currentProject.getId(), app);
+
+            final List<MavenProject> pendingProjects = expectedProjects.stream()
+                    .filter(project -> !collectedApps.containsKey(project.getId()))
+                    .collect(toList());
+            final List<String> failedProjects = pendingProjects.stream()
+                    .filter(this::isFailedOrSkipped)
+                    .map(MavenProject::getId)
+                    .collect(toList());
+            if (!failedProjects.isEmpty() && failedProjects.size() == pendingProjects.size()) {
+                COLLECTED_APPS.remove(session.getRequest());
+                getLog().error("Not deploying any app of the reactor because the modules " + failedProjects + " failed or were skipped");
+                return;
+            } else if (!pendingProjects.isEmpty()) {
+                getLog().info("deployment of " + (app == null ? currentProject.getId() : app.getId())
+                        + " is deferred until the end of the reactor build");
+                return;
+            }
+            apps = new LinkedHashMap<>(collectedApps);
+            COLLECTED_APPS.remove(session.getRequest());
+        }
+
+        deployApps(new DeploymentGraph(apps.values().stream().filter(Objects::nonNull).collect(toList())));
+    }
+
+    private List<String> projectsBindingGoal() {
+        final String pluginKey = execution.getMojoDescriptor().getPluginDescriptor().getPluginLookupKey();
+        return session.getProjects()
+                .stream()
+                .filter(project -> project.getBuildPlugins()
+                        .stream()
+                        .filter(plugin -> pluginKey.equals(plugin.getKey()))
+                        .map(Plugin::getExecutions)
+                        .flatMap(List::stream)
+                        .anyMatch(pluginExecution -> pluginExecution.getGoals().contains(execution.getGoal())))
+                .map(MavenProject::getId)
+                .collect(toList());
+    }
+
+    /**
+     * Whether the module failed, or was skipped with --fail-at-end because a module it depends on failed.
+     */
+    private boolean isFailedOrSkipped(MavenProject project) {
+        if (session.getResult().getBuildSummary(project) instanceof BuildFailure) {
+            return true;
+        }
+        final ProjectDependencyGraph graph = session.getProjectDependencyGraph();
+        return graph != null && graph.getUpstreamProjects(project, true)
+                .stream()
+                .anyMatch(upstream -> session.getResult().getBuildSummary(upstream) instanceof BuildFailure);
+    }
+
+    private void deployApps(DeploymentGraph graph) throws MojoExecutionException {
+        final List<String> order = graph.topologicalOrder();
+        getLog().info("deploying " + order + " to " + marathonHost + " with parallelism " + parallelism);
+
+        final Marathon marathon = MarathonClient.getInstance(marathonHost);
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, order.size())));
+        try {
+            final Map<String, CompletableFuture<Void>> deployments = new LinkedHashMap<>();
+            for (final String appId : order) {
+                final CompletableFuture<?>[] dependencies = graph.getDependencies(appId)
+                        .stream()
+                        .map(deployments::get)
+                        .toArray(CompletableFuture[]::new);
+                deployments.put(appId, CompletableFuture.allOf(dependencies).thenRunAsync(() -> {
+                    try {
+                        getLog().info("deploying Marathon config for " + appId + " to " + marathonHost);
+                        deployApp(marathon, graph.getApp(appId));
+                    } catch (MojoExecutionException e) {
+                        throw new CompletionException(e);
+                    }
+                }, executor));
+            }
+
+            // the deployments are in topological order, so the outcome of the dependencies is known for every app
+            final Map<String, Throwable> failures = new LinkedHashMap<>();
+            final Set<String> skipped = new LinkedHashSet<>();
+            for (final Map.Entry<String, CompletableFuture<Void>> deployment : deployments.entrySet()) {
+                final Set<String> failedDependencies = graph.getDependencies(deployment.getKey())
+                        .stream()
+                        .filter(dependency -> failures.containsKey(dependency) || skipped.contains(dependency))
+                        .collect(toCollection(LinkedHashSet::new));
+                try {
+                    deployment.getValue().get();
+                } catch (ExecutionException e) {
+                    if (failedDependencies.isEmpty()) {
+                        getLog().error("Failed to deploy app " + deployment.getKey(), e.getCause());
+                        failures.put(deployment.getKey(), e.getCause());
+                    } else {
+                        getLog().warn("Skipped app " + deployment.getKey() + " because its dependencies " + failedDependencies
+                                + " were not deployed");
+                        skipped.add(deployment.getKey());
+                    }
+                }
+            }
+
+            if (!failures.isEmpty()) {
+                throw new MojoExecutionException("Failed to deploy apps " + failures.keySet()
+                        + (skipped.isEmpty() ? "" : ", skipped apps depending on them " + skipped), failures.values().iterator().next());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while deploying apps " + order, e);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
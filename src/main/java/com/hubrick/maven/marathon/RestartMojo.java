@@ -0,0 +1,100 @@
+/**
+ * Copyright (C) ${project.inceptionYear} Etaia AS (oss@hubrick.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hubrick.maven.marathon;
+
+import com.google.common.base.Stopwatch;
+import mesosphere.marathon.client.Marathon;
+import mesosphere.marathon.client.MarathonClient;
+import mesosphere.marathon.client.model.v2.App;
+import mesosphere.marathon.client.model.v2.Result;
+import mesosphere.marathon.client.utils.MarathonException;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.hubrick.maven.marathon.Utils.readApp;
+import static java.util.Collections.singletonList;
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Triggers a rolling restart of one or many apps without changing their config.
+ */
+@Mojo(name = "restart")
+public class RestartMojo extends AbstractMarathonDeploymentMojo {
+
+    /**
+     * Ids of the apps to restart. Defaults to the app in {@code marathonConfigFile}.
+     */
+    @Parameter(property = "appIds", required = false)
+    private List<String> appIds;
+
+    /**
+     * Max number of apps which are restarted concurrently.
+     */
+    @Parameter(property = "parallelism", required = false, defaultValue = "4")
+    private Integer parallelism;
+
+    /**
+     * Defines if the restart should override a currently running deployment of the app.
+     */
+    @Parameter(property = "force", required = false, defaultValue = "false")
+    private Boolean force;
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        final Marathon marathon = MarathonClient.getInstance(marathonHost);
+        final ExtendedMarathon extendedMarathon = ExtendedMarathonClient.getInstance(marathonHost);
+        final List<String> restartAppIds = appIds == null || appIds.isEmpty()
+                ? singletonList(readApp(marathonConfigFile).getId())
+                : appIds.stream().map(String::trim).map(Utils::normalizeAppId).distinct().collect(toList());
+        getLog().info("restarting " + restartAppIds + " on " + marathonHost + " with parallelism " + parallelism);
+
+        final Map<String, Stopwatch> durations = new ConcurrentHashMap<>();
+        try {
+            runInParallel(restartAppIds, parallelism, appId -> durations.put(appId, restartApp(marathon, extendedMarathon, appId)));
+        } finally {
+            durations.forEach((appId, duration) -> getLog().info("Restart of app " + appId + " took " + duration));
+        }
+    }
+
+    private Stopwatch restartApp(Marathon marathon, ExtendedMarathon extendedMarathon, String appId) throws MojoExecutionException {
+        try {
+            if (waitOnRunningDeployment && !force) {
+                waitForRunningDeployment(marathon, appId);
+            }
+
+            final App currentApp = marathon.getApp(appId).getApp();
+            final Stopwatch stopwatch = new Stopwatch().start();
+            final Stopwatch firstHealthyStopwatch = new Stopwatch().start();
+            final Result result = extendedMarathon.restartApp(appId, force);
+            getLog().info("Checking app " + appId + " with new version " + result.getVersion() + " for successful restart... "
+                    + "(Id " + result.getDeploymentId() + ")");
+
+            if (waitForSuccessfulDeployment) {
+                waitForSuccessfulDeployment(marathon, appId, firstHealthyStopwatch, result.getVersion(),
+                        calculateTimeoutInSeconds(appId, currentApp.getInstances()));
+            }
+            return stopwatch.stop();
+        } catch (MarathonException restartAppException) {
+            throw new MojoExecutionException("Failed to restart app " + appId + " at " + marathonHost, restartAppException);
+        }
+    }
+}
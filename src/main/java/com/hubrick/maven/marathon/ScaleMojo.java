@@ -0,0 +1,164 @@
+/**
+ * Copyright (C) ${project.inceptionYear} Etaia AS (oss@hubrick.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hubrick.maven.marathon;
+
+import com.google.common.base.Stopwatch;
+import mesosphere.marathon.client.Marathon;
+import mesosphere.marathon.client.MarathonClient;
+import mesosphere.marathon.client.model.v2.App;
+import mesosphere.marathon.client.model.v2.Result;
+import mesosphere.marathon.client.utils.MarathonException;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static com.hubrick.maven.marathon.Utils.normalizeAppId;
+import static com.hubrick.maven.marathon.Utils.readApp;
+
+/**
+ * Changes the instance count of one or many apps without pushing their whole config.
+ */
+@Mojo(name = "scale")
+public class ScaleMojo extends AbstractMarathonDeploymentMojo {
+
+    /**
+     * Ids of the apps to scale. Each entry may carry its own target as {@code /app=5} for an absolute
+     * instance count or {@code /app=x1.5} for a multiplier of the current count. Entries without a target
+     * use {@code instances} or {@code scaleFactor}. Defaults to the app in {@code marathonConfigFile}.
+     */
+    @Parameter(property = "appIds", required = false)
+    private List<String> appIds;
+
+    /**
+     * Target instance count for all apps without an explicit target.
+     */
+    @Parameter(property = "instances", required = false)
+    private Integer instances;
+
+    /**
+     * Multiplier applied to the current instance count of all apps without an explicit target.
+     * The result is rounded to the nearest integer.
+     */
+    @Parameter(property = "scaleFactor", required = false)
+    private Double scaleFactor;
+
+    /**
+     * Max number of apps which are scaled concurrently.
+     */
+    @Parameter(property = "parallelism", required = false, defaultValue = "4")
+    private Integer parallelism;
+
+    /**
+     * Defines if the scaling should override a currently running deployment of the app.
+     */
+    @Parameter(property = "force", required = false, defaultValue = "false")
+    private Boolean force;
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        final Marathon marathon = MarathonClient.getInstance(marathonHost);
+        final Map<String, ScaleTarget> scaleTargets = parseScaleTargets();
+        getLog().info("scaling " + scaleTargets.keySet() + " on " + marathonHost + " with parallelism " + parallelism);
+        runInParallel(new ArrayList<>(scaleTargets.keySet()), parallelism,
+                appId -> scaleApp(marathon, appId, scaleTargets.get(appId)));
+    }
+
+    private Map<String, ScaleTarget> parseScaleTargets() throws MojoExecutionException {
+        final List<String> entries = appIds == null || appIds.isEmpty() ? new ArrayList<>() : appIds;
+        if (entries.isEmpty()) {
+            entries.add(readApp(marathonConfigFile).getId());
+        }
+
+        final Map<String, ScaleTarget> scaleTargets = new LinkedHashMap<>();
+        for (final String entry : entries) {
+            final int separator = entry.indexOf('=');
+            final String appId = normalizeAppId((separator < 0 ? entry : entry.substring(0, separator)).trim());
+            final ScaleTarget scaleTarget = separator < 0
+                    ? new ScaleTarget(instances, scaleFactor)
+                    : ScaleTarget.parse(entry.substring(separator + 1).trim());
+            if (scaleTarget.instances == null && scaleTarget.scaleFactor == null) {
+                throw new MojoExecutionException("Neither instances nor scaleFactor given for app " + appId);
+            }
+            scaleTargets.put(appId, scaleTarget);
+        }
+        return scaleTargets;
+    }
+
+    private void scaleApp(Marathon marathon, String appId, ScaleTarget scaleTarget) throws MojoExecutionException {
+        try {
+            if (waitOnRunningDeployment && !force) {
+                waitForRunningDeployment(marathon, appId);
+            }
+
+            final App currentApp = marathon.getApp(appId).getApp();
+            final int targetInstances = scaleTarget.resolve(currentApp.getInstances());
+            if (targetInstances == currentApp.getInstances()) {
+                getLog().info(appId + " already runs " + targetInstances + " instances - nothing to scale");
+                return;
+            }
+
+            final App update = new App();
+            update.setInstances(targetInstances);
+
+            final Stopwatch stopwatch = new Stopwatch().start();
+            final Result result = marathon.updateApp(appId, update, force);
+            getLog().info("Scaling app " + appId + " from " + currentApp.getInstances() + " to " + targetInstances
+                    + " instances with new version " + result.getVersion() + " (Id " + result.getDeploymentId() + ")");
+
+            if (waitForSuccessfulDeployment) {
+                waitForSuccessfulScaling(marathon, appId, stopwatch, result.getVersion(), targetInstances,
+                        calculateTimeoutInSeconds(appId, targetInstances));
+            }
+        } catch (MarathonException scaleAppException) {
+            throw new MojoExecutionException("Failed to scale app " + appId + " at " + marathonHost, scaleAppException);
+        }
+    }
+
+    private static final class ScaleTarget {
+
+        private final Integer instances;
+        private final Double scaleFactor;
+
+        private ScaleTarget(Integer instances, Double scaleFactor) {
+            this.instances = instances;
+            this.scaleFactor = scaleFactor;
+        }
+
+        private static ScaleTarget parse(String target) throws MojoExecutionException {
+            try {
+                if (target.startsWith("x")) {
+                    return new ScaleTarget(null, Double.valueOf(target.substring(1)));
+                }
+                return new ScaleTarget(Integer.valueOf(target), null);
+            } catch (NumberFormatException e) {
+                throw new MojoExecutionException("Invalid scale target " + target, e);
+            }
+        }
+
+        private int resolve(int currentInstances) {
+            if (instances != null) {
+                return Math.max(0, instances);
+            }
+            return (int) Math.max(0, Math.round(currentInstances * scaleFactor));
+        }
+    }
+}
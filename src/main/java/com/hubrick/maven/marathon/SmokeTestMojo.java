@@ -0,0 +1,148 @@
+/**
+ * Copyright (C) ${project.inceptionYear} Etaia AS (oss@hubrick.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hubrick.maven.marathon;
+
+import mesosphere.marathon.client.Marathon;
+import mesosphere.marathon.client.MarathonClient;
+import mesosphere.marathon.client.model.v2.App;
+import mesosphere.marathon.client.model.v2.Task;
+import mesosphere.marathon.client.utils.MarathonException;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static com.google.common.collect.Iterables.get;
+import static com.hubrick.maven.marathon.Utils.readApp;
+
+/**
+ * Sends HTTP requests to every task of the app and fails the build if too many of them fail or are too slow.
+ */
+@Mojo(name = "smoketest", defaultPhase = LifecyclePhase.DEPLOY)
+public class SmokeTestMojo extends AbstractMarathonMojo {
+
+    /**
+     * URL of the marathon host as specified in pom.xml.
+     */
+    @Parameter(property = "marathonHost", required = true)
+    private String marathonHost;
+
+    /**
+     * Path which is requested on every task.
+     */
+    @Parameter(property = "smokeTestPath", required = false, defaultValue = "/")
+    private String smokeTestPath;
+
+    /**
+     * Index of the task port which is requested.
+     */
+    @Parameter(property = "smokeTestPortIndex", required = false, defaultValue = "0")
+    private Integer smokeTestPortIndex;
+
+    /**
+     * Number of requests sent to every task.
+     */
+    @Parameter(property = "smokeTestRequestsPerTask", required = false, defaultValue = "10")
+    private Integer smokeTestRequestsPerTask;
+
+    /**
+     * Max number of concurrent requests.
+     */
+    @Parameter(property = "smokeTestConcurrency", required = false, defaultValue = "8")
+    private Integer smokeTestConcurrency;
+
+    /**
+     * Connect and read timeout in ms of a single request.
+     */
+    @Parameter(property = "smokeTestTimeoutInMs", required = false, defaultValue = "2000")
+    private Integer smokeTestTimeoutInMs;
+
+    /**
+     * Max fraction of failed requests, from 0 to 1.
+     */
+    @Parameter(property = "smokeTestMaxErrorRate", required = false, defaultValue = "0")
+    private Double smokeTestMaxErrorRate;
+
+    /**
+     * Max 99th percentile latency in ms. 0 disables the check.
+     */
+    @Parameter(property = "smokeTestMaxP99LatencyInMs", required = false, defaultValue = "0")
+    private Integer smokeTestMaxP99LatencyInMs;
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        final Marathon marathon = MarathonClient.getInstance(marathonHost);
+        final App app = readApp(marathonConfigFile);
+        final List<URL> urls = buildTaskUrls(loadTasks(marathon, app));
+        if (urls.isEmpty()) {
+            throw new MojoFailureException("No tasks to smoke test found for " + app.getId());
+        }
+
+        getLog().info("smoke testing " + urls.size() + " tasks of " + app.getId() + " with " + smokeTestRequestsPerTask
+                + " requests each");
+        final TaskProber.ProbeStatistics statistics;
+        try {
+            statistics = new TaskProber(smokeTestConcurrency, smokeTestTimeoutInMs, getLog()).probe(urls, smokeTestRequestsPerTask);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MojoExecutionException("Interrupted while smoke testing " + app.getId(), e);
+        }
+        getLog().info("Smoke test of " + app.getId() + ": " + statistics);
+
+        if (statistics.getErrorRate() > smokeTestMaxErrorRate) {
+            throw new MojoFailureException("Smoke test of " + app.getId() + " failed: error rate " + statistics.getErrorRate()
+                    + " exceeds " + smokeTestMaxErrorRate + " (" + statistics + ")");
+        }
+        if (smokeTestMaxP99LatencyInMs > 0 && statistics.getPercentile(0.99) > smokeTestMaxP99LatencyInMs) {
+            throw new MojoFailureException("Smoke test of " + app.getId() + " failed: p99 latency " + statistics.getPercentile(0.99)
+                    + "ms exceeds " + smokeTestMaxP99LatencyInMs + "ms (" + statistics + ")");
+        }
+    }
+
+    private Collection<Task> loadTasks(Marathon marathon, App app) throws MojoExecutionException {
+        try {
+            return marathon.getAppTasks(app.getId()).getTasks();
+        } catch (MarathonException getAppTasksException) {
+            throw new MojoExecutionException("Failed to get tasks for Marathon instance "
+                    + marathonHost, getAppTasksException);
+        }
+    }
+
+    private List<URL> buildTaskUrls(Collection<Task> tasks) throws MojoExecutionException {
+        final List<URL> urls = new ArrayList<>();
+        for (final Task task : tasks) {
+            if (task.getPorts() == null || task.getPorts().size() <= smokeTestPortIndex) {
+                getLog().warn("Task " + task.getId() + " has no port with index " + smokeTestPortIndex + " - skipping");
+                continue;
+            }
+
+            final String path = smokeTestPath.startsWith("/") ? smokeTestPath : "/" + smokeTestPath;
+            try {
+                urls.add(new URL("http", task.getHost(), get(task.getPorts(), smokeTestPortIndex), path));
+            } catch (MalformedURLException e) {
+                throw new MojoExecutionException("Invalid smoke test URL for task " + task.getId(), e);
+            }
+        }
+        return urls;
+    }
+}
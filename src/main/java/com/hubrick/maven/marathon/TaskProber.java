@@ -0,0 +1,175 @@
+/**
+ * Copyright (C) ${project.inceptionYear} Etaia AS (oss@hubrick.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hubrick.maven.marathon;
+
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sends HTTP GET requests to a set of endpoints on a bounded number of concurrent connections and records
+ * the outcome and latency of every request.
+ */
+class TaskProber {
+
+    private final int concurrency;
+    private final int timeoutInMs;
+    private final Log log;
+
+    TaskProber(int concurrency, int timeoutInMs, Log log) {
+        this.concurrency = concurrency;
+        this.timeoutInMs = timeoutInMs;
+        this.log = log;
+    }
+
+    ProbeStatistics probe(List<URL> urls, int requestsPerUrl) throws InterruptedException {
+        final List<Callable<Long>> probes = new ArrayList<>();
+        for (int i = 0; i < requestsPerUrl; i++) {
+            for (final URL url : urls) {
+                probes.add(() -> probe(url));
+            }
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(concurrency, probes.size())));
+        try {
+            final List<Long> latencies = new ArrayList<>();
+            int errors = 0;
+            for (final Future<Long> future : executor.invokeAll(probes)) {
+                try {
+                    latencies.add(future.get());
+                } catch (ExecutionException e) {
+                    errors++;
+                    if (e.getCause() instanceof ProbeException) {
+                        latencies.add(((ProbeException) e.getCause()).latencyInMs);
+                    } else {
+                        // the latency of an unexpected failure is unknown, it only counts as error
+                        log.warn("Probe failed unexpectedly", e.getCause());
+                    }
+                }
+            }
+            return new ProbeStatistics(latencies, errors, probes.size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private long probe(URL url) throws ProbeException {
+        final long start = System.nanoTime();
+        HttpURLConnection connection = null;
+        try {
+            connection = (HttpURLConnection) url.openConnection();
+            connection.setConnectTimeout(timeoutInMs);
+            connection.setReadTimeout(timeoutInMs);
+            connection.setUseCaches(false);
+            final int status = connection.getResponseCode();
+            final InputStream body = status >= 400 ? connection.getErrorStream() : connection.getInputStream();
+            if (body != null) {
+                // drain the body so that the connection can be reused
+                try (InputStream in = body) {
+                    final byte[] buffer = new byte[4096];
+                    while (in.read(buffer) != -1) {
+                        // discard
+                    }
+                }
+            }
+
+            final long latencyInMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            if (status < 200 || status >= 400) {
+                log.warn("Probe of " + url + " returned status " + status + " after " + latencyInMs + " ms");
+                throw new ProbeException(latencyInMs);
+            }
+            return latencyInMs;
+        } catch (IOException e) {
+            final long latencyInMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            log.warn("Probe of " + url + " failed after " + latencyInMs + " ms: " + e);
+            if (connection != null) {
+                connection.disconnect();
+            }
+            throw new ProbeException(latencyInMs);
+        }
+    }
+
+    private static final class ProbeException extends Exception {
+
+        private final long latencyInMs;
+
+        private ProbeException(long latencyInMs) {
+            this.latencyInMs = latencyInMs;
+        }
+    }
+
+    static final class ProbeStatistics {
+
+        private final List<Long> latencies;
+        private final int errors;
+        private final int requests;
+
+        /**
+         * @param latencies the latencies of all requests whose latency is known
+         */
+        ProbeStatistics(List<Long> latencies, int errors, int requests) {
+            this.latencies = new ArrayList<>(latencies);
+            Collections.sort(this.latencies);
+            this.errors = errors;
+            this.requests = requests;
+        }
+
+        int getRequests() {
+            return requests;
+        }
+
+        int getErrors() {
+            return errors;
+        }
+
+        double getErrorRate() {
+            return requests == 0 ? 0 : (double) errors / requests;
+        }
+
+        /**
+         * Latency in ms below which the given fraction of all requests completed (nearest-rank method).
+         */
+        long getPercentile(double fraction) {
+            if (latencies.isEmpty()) {
+                return 0;
+            }
+            final int rank = (int) Math.ceil(fraction * latencies.size());
+            return latencies.get(Math.min(latencies.size(), Math.max(1, rank)) - 1);
+        }
+
+        @Override
+        public String toString() {
+            return "requests=" + getRequests()
+                    + ", errors=" + errors
+                    + ", p50=" + getPercentile(0.5) + "ms"
+                    + ", p90=" + getPercentile(0.9) + "ms"
+                    + ", p99=" + getPercentile(0.99) + "ms"
+                    + ", max=" + getPercentile(1) + "ms";
+        }
+    }
+}
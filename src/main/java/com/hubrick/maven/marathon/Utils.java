@@ -43,9 +43,11 @@ public class Utils {
         try (Reader reader = new InputStreamReader(new FileInputStream(new File(file)),
                 Charsets.UTF_8)) {
             final App app = ModelUtils.GSON.fromJson(reader, App.class);
-            if (!app.getId().startsWith("/")) {
-                app.setId("/" + app.getId());
+            if (app == null || app.getId() == null || app.getId().isEmpty()) {
+                // e.g. an editor truncated the file before writing it
+                throw new MojoExecutionException("Marathon config file at " + file + " defines no app id");
             }
+            app.setId(normalizeAppId(app.getId()));
 
             return app;
         } catch (FileNotFoundException e) {
@@ -57,6 +59,10 @@ public class Utils {
         }
     }
 
+    public static final String normalizeAppId(String appId) {
+        return appId.startsWith("/") ? appId : "/" + appId;
+    }
+
     public static final void writeApp(App app, String file) throws MojoExecutionException {
         try (Writer writer = new OutputStreamWriter(new FileOutputStream(new File(file)),
                 Charsets.UTF_8)) {
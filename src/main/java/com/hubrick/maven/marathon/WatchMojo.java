@@ -0,0 +1,130 @@
+/**
+ * Copyright (C) ${project.inceptionYear} Etaia AS (oss@hubrick.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hubrick.maven.marathon;
+
+import mesosphere.marathon.client.Marathon;
+import mesosphere.marathon.client.MarathonClient;
+import mesosphere.marathon.client.model.v2.App;
+import mesosphere.marathon.client.utils.ModelUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static com.hubrick.maven.marathon.Utils.readApp;
+
+/**
+ * Watches the Marathon config file and pushes every real change to Marathon until the build is stopped.
+ */
+@Mojo(name = "watch")
+public class WatchMojo extends AbstractMarathonDeploymentMojo {
+
+    /**
+     * Additional files which trigger a redeployment when they change, e.g. inputs of the Marathon config.
+     */
+    @Parameter(property = "watchFiles", required = false)
+    private List<String> watchFiles;
+
+    /**
+     * Time in ms without further changes before a burst of changes is deployed.
+     */
+    @Parameter(property = "watchDebounceInMs", required = false, defaultValue = "500")
+    private Integer watchDebounceInMs;
+
+    private String lastDeployedConfig;
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        final Marathon marathon = MarathonClient.getInstance(marathonHost);
+        final Set<Path> files = new LinkedHashSet<>();
+        files.add(Paths.get(marathonConfigFile).toAbsolutePath().normalize());
+        if (watchFiles != null) {
+            watchFiles.forEach(file -> files.add(Paths.get(file).toAbsolutePath().normalize()));
+        }
+
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            for (final Path directory : directoriesOf(files)) {
+                directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            }
+            getLog().info("watching " + files + " for changes, stop with Ctrl-C");
+
+            deployIfChanged(marathon);
+            while (true) {
+                boolean changed = isRelevant(watchService.take(), files);
+                WatchKey next;
+                while ((next = watchService.poll(watchDebounceInMs, TimeUnit.MILLISECONDS)) != null) {
+                    changed |= isRelevant(next, files);
+                }
+                if (changed) {
+                    deployIfChanged(marathon);
+                }
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException("Failed to watch " + files, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            getLog().info("stopped watching " + files);
+        }
+    }
+
+    private static Set<Path> directoriesOf(Set<Path> files) {
+        final Set<Path> directories = new LinkedHashSet<>();
+        files.forEach(file -> directories.add(file.getParent()));
+        return directories;
+    }
+
+    private static boolean isRelevant(WatchKey key, Set<Path> files) {
+        boolean relevant = false;
+        final Path directory = (Path) key.watchable();
+        for (final WatchEvent<?> event : key.pollEvents()) {
+            relevant |= event.kind() == StandardWatchEventKinds.OVERFLOW
+                    || files.contains(directory.resolve((Path) event.context()));
+        }
+        key.reset();
+        return relevant;
+    }
+
+    private void deployIfChanged(Marathon marathon) {
+        try {
+            final App app = readApp(marathonConfigFile);
+            final String config = ModelUtils.GSON.toJson(app);
+            if (config.equals(lastDeployedConfig)) {
+                getLog().info("Marathon config for " + app.getId() + " did not change");
+                return;
+            }
+
+            // only real changes are pushed, an unchanged app is skipped
+            deployApp(marathon, app, true);
+            lastDeployedConfig = config;
+        } catch (MojoExecutionException | RuntimeException e) {
+            // keep watching, the next change might fix the problem
+            getLog().error("Failed to deploy Marathon config from " + marathonConfigFile, e);
+        }
+    }
+}
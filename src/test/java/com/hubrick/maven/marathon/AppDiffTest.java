@@ -0,0 +1,76 @@
+/**
+ * Copyright (C) ${project.inceptionYear} Etaia AS (oss@hubrick.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hubrick.maven.marathon;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.io.Resources;
+import com.google.gson.JsonArray;
+import com.google.gson.reflect.TypeToken;
+import mesosphere.marathon.client.model.v2.App;
+import mesosphere.marathon.client.model.v2.GetAppResponse;
+import mesosphere.marathon.client.model.v2.HealthCheck;
+import mesosphere.marathon.client.utils.ModelUtils;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class AppDiffTest {
+
+    private static App deployedApp() throws Exception {
+        return ModelUtils.GSON.fromJson(Resources.toString(Resources.getResource(AppDiffTest.class, "/getAppResponse.json"), Charsets.UTF_8),
+                GetAppResponse.class).getApp();
+    }
+
+    private static App desiredApp() {
+        final App app = new App();
+        app.setId("/example-service");
+        app.setInstances(2);
+        app.setMem(768.0);
+        app.setEnv(ImmutableMap.of("JAVA_OPTS", "-Xms512m -Xmx512m", "SERVICE_8080_NAME", "example-service"));
+        return app;
+    }
+
+    @Test
+    public void testDefaultsOfDeployedAppAreIgnored() throws Exception {
+        assertTrue(AppDiff.changedFields(desiredApp(), deployedApp()).isEmpty());
+    }
+
+    @Test
+    public void testChangedFieldsAreReported() throws Exception {
+        final App app = desiredApp();
+        app.setInstances(3);
+        app.setEnv(ImmutableMap.of("JAVA_OPTS", "-Xms512m -Xmx512m"));
+
+        assertEquals(ImmutableSet.of("instances", "env"), AppDiff.changedFields(app, deployedApp()));
+    }
+
+    @Test
+    public void testRemovedNestedKeyIsReported() throws Exception {
+        final App deployed = deployedApp();
+        final App app = desiredApp();
+        app.setContainer(deployed.getContainer());
+        final JsonArray healthChecks = ModelUtils.GSON.toJsonTree(deployed.getHealthChecks()).getAsJsonArray();
+        healthChecks.get(0).getAsJsonObject().remove("path");
+        app.setHealthChecks(ModelUtils.GSON.fromJson(healthChecks, new TypeToken<List<HealthCheck>>() { }.getType()));
+
+        assertEquals(ImmutableSet.of("healthChecks"), AppDiff.changedFields(app, deployed));
+    }
+}
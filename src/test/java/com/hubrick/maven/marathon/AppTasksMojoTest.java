@@ -0,0 +1,133 @@
+/**
+ * Copyright (C) ${project.inceptionYear} Etaia AS (oss@hubrick.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hubrick.maven.marathon;
+
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Resources;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.rule.MockWebServerRule;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.configuration.DefaultPlexusConfiguration;
+import org.codehaus.plexus.configuration.PlexusConfiguration;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Properties;
+
+public class AppTasksMojoTest extends AbstractMarathonMojoTestWithJUnit4 {
+
+    @Rule
+    public final MockWebServerRule server = new MockWebServerRule();
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final MavenProject project = new MavenProject();
+
+    private AppTasksMojo lookupAppTasksMojo(String taskState, String taskVersion, File tasksFile, boolean setProjectProperties) throws Exception {
+        PlexusConfiguration pluginCfg = new DefaultPlexusConfiguration("configuration");
+        pluginCfg.addChild("marathonHost", server.getUrl("").toString());
+        pluginCfg.addChild("marathonConfigFile", getTestMarathonConfigFile());
+        pluginCfg.addChild("propertyPrefix", "mesos-");
+        pluginCfg.addChild("delay", "0");
+        pluginCfg.addChild("taskState", taskState);
+        if (taskVersion != null) {
+            pluginCfg.addChild("taskVersion", taskVersion);
+        }
+        pluginCfg.addChild("tasksFile", tasksFile.getAbsolutePath());
+        pluginCfg.addChild("setProjectProperties", String.valueOf(setProjectProperties));
+        final AppTasksMojo mojo = (AppTasksMojo) lookupMarathonMojo("apptasks", pluginCfg);
+        setVariableValueToObject(mojo, "project", project);
+        return mojo;
+    }
+
+    private void enqueueResponses() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(200).setBody(
+                Resources.toString(Resources.getResource(AppTasksMojoTest.class, "/getAppResponse.json"), Charsets.UTF_8)));
+        server.enqueue(new MockResponse().setResponseCode(200).setBody(
+                Resources.toString(Resources.getResource(AppTasksMojoTest.class, "/appTasksResponse.json"), Charsets.UTF_8)));
+    }
+
+    @Test
+    public void testHealthyTasksOfLatestVersionWrittenToPropertiesFile() throws Exception {
+        enqueueResponses();
+        final File tasksFile = new File(folder.getRoot(), "tasks/tasks.properties");
+
+        lookupAppTasksMojo("healthy", "latest", tasksFile, false).execute();
+
+        final List<String> lines = Files.readAllLines(tasksFile.toPath(), Charsets.UTF_8);
+        assertEquals("mesos-count=2", lines.get(0));
+        assertEquals("mesos-host0=a-host", lines.get(1));
+        assertEquals("mesos-port0-0=31001", lines.get(2));
+        assertEquals("mesos-host1=b-host", lines.get(3));
+        assertEquals("mesos-port1-0=31002", lines.get(4));
+        assertEquals(5, lines.size());
+        assertTrue(project.getProperties().isEmpty());
+    }
+
+    @Test
+    public void testPropertiesFileIsEscaped() throws Exception {
+        enqueueResponses();
+        final File tasksFile = new File(folder.getRoot(), "tasks.properties");
+        final AppTasksMojo mojo = lookupAppTasksMojo("healthy", "latest", tasksFile, false);
+        setVariableValueToObject(mojo, "propertyPrefix", "mesos tasks:\u00e4-");
+
+        mojo.execute();
+
+        final List<String> lines = Files.readAllLines(tasksFile.toPath(), Charsets.UTF_8);
+        assertEquals("mesos\\ tasks\\:\\u00E4-count=2", lines.get(0));
+        assertEquals(5, lines.size());
+        final Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(tasksFile.toPath())) {
+            properties.load(in);
+        }
+        assertEquals("2", properties.getProperty("mesos tasks:\u00e4-count"));
+        assertEquals("b-host", properties.getProperty("mesos tasks:\u00e4-host1"));
+    }
+
+    @Test
+    public void testAllTasksSortedAndWrittenToJsonFile() throws Exception {
+        enqueueResponses();
+        final File tasksFile = new File(folder.getRoot(), "tasks.json");
+
+        lookupAppTasksMojo("all", null, tasksFile, true).execute();
+
+        final JsonObject json = new JsonParser().parse(new String(Files.readAllBytes(tasksFile.toPath()), Charsets.UTF_8)).getAsJsonObject();
+        assertEquals("/example-service", json.get("appId").getAsString());
+        final JsonArray tasks = json.getAsJsonArray("tasks");
+        assertEquals(5, tasks.size());
+        // ports are ordered numerically, 8080 before 31000
+        assertEquals("example-service.t5", tasks.get(0).getAsJsonObject().get("id").getAsString());
+        assertEquals("example-service.t2", tasks.get(1).getAsJsonObject().get("id").getAsString());
+        assertEquals("example-service.t1", tasks.get(2).getAsJsonObject().get("id").getAsString());
+        assertEquals("example-service.t3", tasks.get(3).getAsJsonObject().get("id").getAsString());
+        assertEquals("example-service.t4", tasks.get(4).getAsJsonObject().get("id").getAsString());
+
+        assertEquals(10, project.getProperties().size());
+        assertEquals("a-host", project.getProperties().getProperty("mesos-host0"));
+        assertEquals("8080", project.getProperties().getProperty("mesos-port0-0"));
+        assertEquals("31000", project.getProperties().getProperty("mesos-port1-0"));
+        assertEquals("c-host", project.getProperties().getProperty("mesos-host4"));
+    }
+}
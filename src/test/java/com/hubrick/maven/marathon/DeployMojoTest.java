@@ -18,6 +18,8 @@ package com.hubrick.maven.marathon;
 
 import com.google.common.base.Charsets;
 import com.google.common.io.Resources;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
 import com.squareup.okhttp.mockwebserver.MockResponse;
 import com.squareup.okhttp.mockwebserver.RecordedRequest;
 import com.squareup.okhttp.mockwebserver.rule.MockWebServerRule;
@@ -30,8 +32,11 @@ import org.codehaus.plexus.configuration.PlexusConfiguration;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
 
+import java.io.File;
 import java.io.FileNotFoundException;
+import java.nio.file.Files;
 
 import static org.hamcrest.CoreMatchers.isA;
 
@@ -41,11 +46,14 @@ public class DeployMojoTest extends AbstractMarathonMojoTestWithJUnit4 {
     public static final String APP_ID = "/example-service";
     public static final String APPS_PATH = "/v2/apps";
     public static final String DEPLOYMENTS_PATH = "/v2/deployments";
+    public static final String QUEUE_PATH = "/v2/queue";
 
     @Rule
     public final ExpectedException thrown = ExpectedException.none();
     @Rule
     public final MockWebServerRule server = new MockWebServerRule();
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
 
     private String getMarathonHost() {
         return server.getUrl("").toString();
@@ -55,7 +63,7 @@ public class DeployMojoTest extends AbstractMarathonMojoTestWithJUnit4 {
         return (DeployMojo) lookupMarathonMojo("deploy", pluginCfg);
     }
 
-    private DeployMojo lookupDeployMojo(String marathonFile) throws Exception {
+    private PlexusConfiguration deployConfiguration(String marathonFile) {
         PlexusConfiguration pluginCfg = new DefaultPlexusConfiguration("configuration");
         pluginCfg.addChild("marathonHost", getMarathonHost());
         pluginCfg.addChild("marathonConfigFile", marathonFile);
@@ -63,7 +71,11 @@ public class DeployMojoTest extends AbstractMarathonMojoTestWithJUnit4 {
         pluginCfg.addChild("waitOnRunningDeploymentTimeoutInSec", "300");
         pluginCfg.addChild("waitForSuccessfulDeployment", "true");
         pluginCfg.addChild("waitForSuccessfulDeploymentTimeoutInSec", "300");
-        return (DeployMojo) lookupMarathonMojo("deploy", pluginCfg);
+        return pluginCfg;
+    }
+
+    private DeployMojo lookupDeployMojo(String marathonFile) throws Exception {
+        return lookupDeployMojo(deployConfiguration(marathonFile));
     }
 
     private DeployMojo lookupDeployMojo() throws Exception {
@@ -278,4 +290,80 @@ public class DeployMojoTest extends AbstractMarathonMojoTestWithJUnit4 {
         assertEquals("GET", getAppRequest3.getMethod());
     }
 
+    @Test
+    public void testDeployFailedDueToOfferStarvation() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(404));
+        server.enqueue(new MockResponse().setResponseCode(200).setBody(Resources.toString(Resources.getResource(DeployMojoTest.class, "/appResponse.json"), Charsets.UTF_8)));
+        server.enqueue(new MockResponse().setResponseCode(200).setBody(Resources.toString(Resources.getResource(DeployMojoTest.class, "/deploymentResponse.json"), Charsets.UTF_8)));
+        for (int i = 0; i < 2; i++) {
+            server.enqueue(new MockResponse().setResponseCode(200).setBody(Resources.toString(Resources.getResource(DeployMojoTest.class, "/stagingGetAppResponse.json"), Charsets.UTF_8)));
+            server.enqueue(new MockResponse().setResponseCode(200).setBody(Resources.toString(Resources.getResource(DeployMojoTest.class, "/deploymentResponse.json"), Charsets.UTF_8)));
+            server.enqueue(new MockResponse().setResponseCode(200).setBody(Resources.toString(Resources.getResource(DeployMojoTest.class, "/queueResponse.json"), Charsets.UTF_8)));
+        }
+        server.enqueue(new MockResponse().setResponseCode(500));
+        thrown.expect(MojoExecutionException.class);
+        thrown.expectMessage("InsufficientCpus (2 of 2), UnfulfilledConstraint (1 of 3)");
+
+        final PlexusConfiguration pluginCfg = deployConfiguration(getTestMarathonConfigFile());
+        pluginCfg.addChild("offerStarvationTimeoutInSec", "1");
+        final DeployMojo mojo = lookupDeployMojo(pluginCfg);
+        assertNotNull(mojo);
+
+        try {
+            mojo.execute();
+        } finally {
+            assertEquals(9, server.getRequestCount());
+            for (int i = 0; i < 8; i++) {
+                server.takeRequest();
+            }
+            RecordedRequest getQueueRequest = server.takeRequest();
+            assertEquals(QUEUE_PATH, getQueueRequest.getPath());
+            assertEquals("GET", getQueueRequest.getMethod());
+        }
+    }
+
+    private DeployMojo lookupDifferentialDeployMojo(int instances) throws Exception {
+        final File marathonFile = folder.newFile();
+        Files.write(marathonFile.toPath(), ("{\"id\": \"example-service\", \"instances\": " + instances + ", \"mem\": 768,"
+                + " \"env\": {\"JAVA_OPTS\": \"-Xms512m -Xmx512m\", \"SERVICE_8080_NAME\": \"example-service\"}}").getBytes(Charsets.UTF_8));
+
+        PlexusConfiguration pluginCfg = new DefaultPlexusConfiguration("configuration");
+        pluginCfg.addChild("marathonHost", getMarathonHost());
+        pluginCfg.addChild("marathonConfigFile", marathonFile.getAbsolutePath());
+        pluginCfg.addChild("waitOnRunningDeployment", "false");
+        pluginCfg.addChild("waitForSuccessfulDeployment", "false");
+        pluginCfg.addChild("waitForSuccessfulDeploymentTimeoutInSec", "300");
+        pluginCfg.addChild("differentialUpdate", "true");
+        return lookupDeployMojo(pluginCfg);
+    }
+
+    @Test
+    public void testDifferentialUpdateSendsOnlyChangedFields() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(200).setBody(Resources.toString(Resources.getResource(DeployMojoTest.class, "/getAppResponse.json"), Charsets.UTF_8)));
+        server.enqueue(new MockResponse().setResponseCode(200).setBody(Resources.toString(Resources.getResource(DeployMojoTest.class, "/getAppResponse.json"), Charsets.UTF_8)));
+        server.enqueue(new MockResponse().setResponseCode(200).setBody(Resources.toString(Resources.getResource(DeployMojoTest.class, "/updateAppResponse.json"), Charsets.UTF_8)));
+
+        lookupDifferentialDeployMojo(3).execute();
+
+        assertEquals(3, server.getRequestCount());
+        server.takeRequest();
+        server.takeRequest();
+        RecordedRequest updateAppRequest = server.takeRequest();
+        assertEquals("PUT", updateAppRequest.getMethod());
+        final JsonObject update = new JsonParser().parse(updateAppRequest.getBody().readUtf8()).getAsJsonObject();
+        assertEquals(2, update.entrySet().size());
+        assertEquals(APP_ID, update.get("id").getAsString());
+        assertEquals(3, update.get("instances").getAsInt());
+    }
+
+    @Test
+    public void testDifferentialUpdateSkipsUnchangedApp() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(200).setBody(Resources.toString(Resources.getResource(DeployMojoTest.class, "/getAppResponse.json"), Charsets.UTF_8)));
+        server.enqueue(new MockResponse().setResponseCode(200).setBody(Resources.toString(Resources.getResource(DeployMojoTest.class, "/getAppResponse.json"), Charsets.UTF_8)));
+        server.enqueue(new MockResponse().setResponseCode(500));
+
+        lookupDifferentialDeployMojo(2).execute();
+
+        assertEquals(2, server.getRequestCount());
+    }
 }
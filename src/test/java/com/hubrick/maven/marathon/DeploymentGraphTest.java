@@ -0,0 +1,75 @@
+/**
+ * Copyright (C) ${project.inceptionYear} Etaia AS (oss@hubrick.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hubrick.maven.marathon;
+
+import mesosphere.marathon.client.model.v2.App;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DeploymentGraphTest {
+
+    @Rule
+    public final ExpectedException thrown = ExpectedException.none();
+
+    private static App app(String id, String... dependencies) {
+        final App app = new App();
+        app.setId(id);
+        app.setDependencies(Arrays.asList(dependencies));
+        return app;
+    }
+
+    @Test
+    public void testDependenciesAreOrderedBeforeDependents() throws Exception {
+        final DeploymentGraph graph = new DeploymentGraph(Arrays.asList(
+                app("/shop/frontend", "../shop/backend", "/shop/search"),
+                app("/shop/backend", "database"),
+                app("/shop/search"),
+                app("/shop/database"),
+                app("/monitoring", "/external/not-in-reactor")));
+
+        final List<String> order = graph.topologicalOrder();
+
+        assertEquals(5, order.size());
+        assertTrue(order.indexOf("/shop/database") < order.indexOf("/shop/backend"));
+        assertTrue(order.indexOf("/shop/backend") < order.indexOf("/shop/frontend"));
+        assertTrue(order.indexOf("/shop/search") < order.indexOf("/shop/frontend"));
+        assertTrue(graph.getDependencies("/monitoring").isEmpty());
+    }
+
+    @Test
+    public void testCyclicDependenciesAreRejected() throws Exception {
+        thrown.expect(MojoExecutionException.class);
+        thrown.expectMessage("[/a, /b]");
+
+        new DeploymentGraph(Arrays.asList(app("/a", "/b"), app("/b", "/a"), app("/c"))).topologicalOrder();
+    }
+
+    @Test
+    public void testDuplicateAppIdsAreRejected() throws Exception {
+        thrown.expect(MojoExecutionException.class);
+        thrown.expectMessage("App /a is defined more than once");
+
+        new DeploymentGraph(Arrays.asList(app("/a"), app("/b"), app("/a", "/b")));
+    }
+}
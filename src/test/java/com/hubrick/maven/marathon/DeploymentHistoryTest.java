@@ -0,0 +1,95 @@
+/**
+ * Copyright (C) ${project.inceptionYear} Etaia AS (oss@hubrick.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hubrick.maven.marathon;
+
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class DeploymentHistoryTest {
+
+    public static final String APP_ID = "/example-service";
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private DeploymentHistory history(Path file) {
+        return new DeploymentHistory(file, 3, new SystemStreamLog());
+    }
+
+    @Test
+    public void testNoEstimateWithoutEnoughSamples() throws Exception {
+        final Path file = folder.getRoot().toPath().resolve("history.json");
+        history(file).record(APP_ID, 3000, 6000, 2);
+        history(file).record(APP_ID, 3000, 6000, 2);
+
+        assertNull(history(file).estimate(APP_ID));
+        assertNull(history(file).estimate("/other-service"));
+    }
+
+    @Test
+    public void testEstimateFromSamples() throws Exception {
+        final Path file = folder.getRoot().toPath().resolve("history.json");
+        history(file).record(APP_ID, 2000, 30000, 2);
+        history(file).record(APP_ID, 3000, 40000, 2);
+        history(file).record(APP_ID, 4000, 200000, 4);
+
+        final DeploymentHistory.Estimate estimate = history(file).estimate(APP_ID);
+        assertNotNull(estimate);
+        assertEquals(2000, estimate.getPollDelayInMs());
+        assertEquals(2000, estimate.getPollIntervalInMs());
+        // p95 of 50s per instance, times 4 instances, times factor 3
+        assertEquals(600, estimate.getTimeoutInSeconds(4));
+        assertEquals(150, estimate.getTimeoutInSeconds(1));
+    }
+
+    @Test
+    public void testOnlyLatestSamplesAreKept() throws Exception {
+        final Path file = folder.getRoot().toPath().resolve("history.json");
+        for (int i = 0; i < DeploymentHistory.MAX_SAMPLES; i++) {
+            history(file).record(APP_ID, 60000, 600000, 1);
+        }
+        for (int i = 0; i < DeploymentHistory.MAX_SAMPLES; i++) {
+            history(file).record(APP_ID, 1000, 5000, 1);
+        }
+
+        final DeploymentHistory.Estimate estimate = history(file).estimate(APP_ID);
+        assertEquals(1000, estimate.getPollDelayInMs());
+        assertEquals(60, estimate.getTimeoutInSeconds(1));
+    }
+
+    @Test
+    public void testTimedOutDeploymentRaisesTimeout() throws Exception {
+        final Path file = folder.getRoot().toPath().resolve("history.json");
+        for (int i = 0; i < 3; i++) {
+            history(file).record(APP_ID, 10000, 40000, 2);
+        }
+        final long timeoutInSeconds = history(file).estimate(APP_ID).getTimeoutInSeconds(2);
+        assertEquals(120, timeoutInSeconds);
+
+        // a deployment timing out after the learned timeout is recorded with the timeout as its duration
+        history(file).record(APP_ID, 120000, 120000, 2);
+
+        assertEquals(360, history(file).estimate(APP_ID).getTimeoutInSeconds(2));
+    }
+}
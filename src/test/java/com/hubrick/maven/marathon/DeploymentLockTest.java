@@ -0,0 +1,144 @@
+/**
+ * Copyright (C) ${project.inceptionYear} Etaia AS (oss@hubrick.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hubrick.maven.marathon;
+
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DeploymentLockTest {
+
+    public static final String APP_ID = "/group/example-service";
+
+    @Rule
+    public final ExpectedException thrown = ExpectedException.none();
+    @Rule
+    public final TemporaryFolder lockDirectory = new TemporaryFolder();
+
+    private final Log log = new SystemStreamLog();
+
+    @Test
+    public void testWaitingDeployersAreServedInOrder() throws Exception {
+        final List<String> events = new CopyOnWriteArrayList<>();
+        final CountDownLatch secondEnqueued = new CountDownLatch(1);
+
+        final DeploymentLock first = DeploymentLock.acquire(lockDirectory.getRoot().toPath(), APP_ID, 60, 10, log);
+        final Thread second = new Thread(() -> {
+            secondEnqueued.countDown();
+            try (DeploymentLock lock = DeploymentLock.acquire(lockDirectory.getRoot().toPath(), APP_ID, 60, 10, log)) {
+                events.add("second acquired");
+            } catch (MojoExecutionException e) {
+                events.add("second failed");
+            }
+        });
+        second.start();
+        secondEnqueued.await();
+        Thread.sleep(500);
+
+        events.add("first released");
+        first.close();
+        second.join(TimeUnit.SECONDS.toMillis(10));
+
+        assertEquals("[first released, second acquired]", events.toString());
+        assertEquals(0, Files.list(lockDirectory.getRoot().toPath().resolve("group_example-service")).count());
+    }
+
+    @Test
+    public void testTicketSortingAheadOfTheHolderWaits() throws Exception {
+        final List<String> events = new CopyOnWriteArrayList<>();
+        final CountDownLatch secondEnqueued = new CountDownLatch(1);
+
+        final DeploymentLock first = DeploymentLock.acquire(lockDirectory.getRoot().toPath(), APP_ID, 60, 10, log);
+        final Thread second = new Thread(() -> {
+            secondEnqueued.countDown();
+            // a clock running behind names the ticket of the later deployer ahead of the one of the holder
+            try (DeploymentLock lock = DeploymentLock.acquire(lockDirectory.getRoot().toPath(), APP_ID, 60, 10, log, 0)) {
+                events.add("second acquired");
+            } catch (MojoExecutionException e) {
+                events.add("second failed");
+            }
+        });
+        second.start();
+        secondEnqueued.await();
+        Thread.sleep(500);
+
+        events.add("first released");
+        first.close();
+        second.join(TimeUnit.SECONDS.toMillis(10));
+
+        assertEquals("[first released, second acquired]", events.toString());
+        assertEquals(0, Files.list(lockDirectory.getRoot().toPath().resolve("group_example-service")).count());
+    }
+
+    @Test
+    public void testExpiredLockIsTakenOver() throws Exception {
+        final Path queue = lockDirectory.newFolder("group_example-service").toPath();
+        final Path expired = Files.write(queue.resolve("0000000000000-crashed.lock"), "crashed@build".getBytes("UTF-8"));
+        final Path holder = Files.write(queue.resolve("holder"), "0000000000000-crashed.lock".getBytes("UTF-8"));
+        Files.setLastModifiedTime(expired, FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(5)));
+        Files.setLastModifiedTime(holder, FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.MINUTES.toMillis(5)));
+
+        try (DeploymentLock lock = DeploymentLock.acquire(lockDirectory.getRoot().toPath(), APP_ID, 60, 10, log)) {
+            assertTrue(Files.notExists(expired));
+            assertEquals(2, Files.list(queue).count());
+        }
+        assertEquals(0, Files.list(queue).count());
+    }
+
+    @Test
+    public void testLockTimeout() throws Exception {
+        thrown.expect(MojoExecutionException.class);
+        thrown.expectMessage("Didn't get it in 1 seconds");
+
+        try (DeploymentLock first = DeploymentLock.acquire(lockDirectory.getRoot().toPath(), APP_ID, 60, 10, log)) {
+            DeploymentLock.acquire(lockDirectory.getRoot().toPath(), APP_ID, 60, 1, log);
+        } finally {
+            final List<Path> tickets = Files.list(lockDirectory.getRoot().toPath().resolve("group_example-service")).collect(Collectors.toList());
+            assertEquals(0, tickets.size());
+        }
+    }
+
+    @Test
+    public void testLostLockIsReported() throws Exception {
+        thrown.expect(MojoExecutionException.class);
+        thrown.expectMessage("Lost the deployment lock");
+
+        try (DeploymentLock lock = DeploymentLock.acquire(lockDirectory.getRoot().toPath(), APP_ID, 1, 10, log)) {
+            lock.checkHeld();
+            // another deployer considered the lease expired and took over the lock
+            Files.write(lockDirectory.getRoot().toPath().resolve("group_example-service").resolve("holder"),
+                    "0000000000000-other.lock".getBytes("UTF-8"));
+            Thread.sleep(1000);
+            lock.checkHeld();
+        }
+    }
+}
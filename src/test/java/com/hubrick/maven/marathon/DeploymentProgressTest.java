@@ -0,0 +1,87 @@
+/**
+ * Copyright (C) ${project.inceptionYear} Etaia AS (oss@hubrick.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hubrick.maven.marathon;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Resources;
+import mesosphere.marathon.client.model.v2.App;
+import mesosphere.marathon.client.model.v2.Task;
+import mesosphere.marathon.client.utils.ModelUtils;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class DeploymentProgressTest {
+
+    public static final String APP_ID = "/example-service";
+    public static final String VERSION = "2016-07-27T08:00:00.000Z";
+
+    private static App app(int staged, int unhealthy) {
+        final List<Task> tasks = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            final Task task = new Task();
+            task.setVersion(VERSION);
+            tasks.add(task);
+        }
+        final App app = new App();
+        app.setId(APP_ID);
+        app.setTasks(tasks);
+        app.setTasksStaged(staged);
+        app.setTasksUnhealthy(unhealthy);
+        return app;
+    }
+
+    private static DeploymentStatus deployment(int currentStep, int totalSteps) {
+        return ModelUtils.GSON.fromJson("{\"version\": \"" + VERSION + "\", \"currentStep\": " + currentStep + ", \"totalSteps\": " + totalSteps
+                + ", \"currentActions\": [{\"action\": \"RestartApplication\", \"app\": \"" + APP_ID + "\"}]}", DeploymentStatus.class);
+    }
+
+    @Test
+    public void testProgressOnlyReportedOnChange() throws Exception {
+        final DeploymentProgress progress = new DeploymentProgress(APP_ID);
+
+        final String first = progress.update(app(2, 0), 0, 4, deployment(1, 2));
+        assertEquals("Deployment of /example-service: step 1/2 (RestartApplication), 0/4 healthy, 2 staged, 0 unhealthy, versions ["
+                + VERSION + "]. 0% done, no estimated completion yet", first);
+        assertNull(progress.update(app(2, 0), 0, 4, deployment(1, 2)));
+
+        final String second = progress.update(app(0, 2), 2, 4, deployment(1, 2));
+        assertTrue(second, second.contains("2/4 healthy, 0 staged, 2 unhealthy"));
+        assertTrue(second, second.contains("25% done, estimated completion in "));
+    }
+
+    @Test
+    public void testActionsOfMarathonResponse() throws Exception {
+        final DeploymentStatus[] deployments = ModelUtils.GSON.fromJson(Resources.toString(
+                Resources.getResource(DeploymentProgressTest.class, "/deploymentResponse.json"), Charsets.UTF_8), DeploymentStatus[].class);
+
+        final String line = new DeploymentProgress(APP_ID).update(app(0, 0), 2, 4, deployments[0]);
+        assertTrue(line, line.startsWith("Deployment of /example-service: step 1/1 (RestartApplication), 2/4 healthy"));
+    }
+
+    @Test
+    public void testProgressWithoutDeployment() throws Exception {
+        final DeploymentProgress progress = new DeploymentProgress(APP_ID);
+
+        assertEquals("Deployment of /example-service: 4/4 healthy, 0 staged, 0 unhealthy, versions [" + VERSION + "]. 100% done",
+                progress.update(app(0, 0), 4, 4, null));
+    }
+}
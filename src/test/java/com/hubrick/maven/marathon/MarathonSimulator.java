@@ -0,0 +1,591 @@
+/**
+ * Copyright (C) ${project.inceptionYear} Etaia AS (oss@hubrick.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hubrick.maven.marathon;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+import mesosphere.marathon.client.utils.ModelUtils;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * In-process simulation of the parts of the Marathon REST API used by the plugin, to be served by a MockWebServer.
+ * <p>
+ * Time advances by one tick with every request. Deployments run the steps Marathon reports for them, e.g. a new app
+ * is started in one tick and scaled in a second step. Every tick the last step of a deployment launches one task of
+ * the target version, kills old tasks as soon as enough new tasks are healthy and finishes once the app runs the
+ * expected number of healthy target tasks. Launched tasks are staged for one tick, running but unhealthy until {@code ticksToHealthy}
+ * passed and healthy afterwards. Latency, random server errors and leader elections can be injected.
+ */
+class MarathonSimulator extends Dispatcher {
+
+    private static final Instant EPOCH = Instant.parse("2016-07-27T08:00:00.000Z");
+
+    private final Map<String, SimulatedApp> apps = new LinkedHashMap<>();
+    private final Map<String, SimulatedDeployment> deployments = new LinkedHashMap<>();
+    private final Map<String, Integer> requestCounts = new TreeMap<>();
+    private final AtomicInteger concurrentRequests = new AtomicInteger();
+    private final AtomicInteger maxConcurrentRequests = new AtomicInteger();
+
+    private Random random = new Random(0);
+    private long latencyInMs;
+    private double errorRate;
+    private int leaderChangeEveryRequests;
+    private int leaderChangeUnavailableRequests;
+    private int ticksToHealthy = 2;
+
+    private long tick;
+    private long taskCounter;
+    private int requestCounter;
+
+    MarathonSimulator withLatency(long latencyInMs) {
+        this.latencyInMs = latencyInMs;
+        return this;
+    }
+
+    MarathonSimulator withErrorRate(double errorRate, long seed) {
+        this.errorRate = errorRate;
+        this.random = new Random(seed);
+        return this;
+    }
+
+    /**
+     * Every {@code everyRequests} requests the leader is lost and the next {@code unavailableRequests} requests fail
+     * with 503 until a new leader is elected.
+     */
+    MarathonSimulator withLeaderChanges(int everyRequests, int unavailableRequests) {
+        this.leaderChangeEveryRequests = everyRequests;
+        this.leaderChangeUnavailableRequests = unavailableRequests;
+        return this;
+    }
+
+    MarathonSimulator withTicksToHealthy(int ticksToHealthy) {
+        this.ticksToHealthy = ticksToHealthy;
+        return this;
+    }
+
+    /**
+     * Adds an app which already runs the given number of healthy tasks.
+     */
+    synchronized void addRunningApp(String appId, int instances) {
+        final JsonObject definition = new JsonObject();
+        definition.addProperty("id", appId);
+        definition.addProperty("instances", instances);
+        definition.addProperty("cpus", 0.1);
+        definition.addProperty("mem", 128.0);
+        final SimulatedApp app = new SimulatedApp(appId, definition, nextVersion());
+        for (int i = 0; i < instances; i++) {
+            final SimulatedTask task = launchTask(app);
+            task.healthyAtTick = tick;
+        }
+        apps.put(appId, app);
+    }
+
+    synchronized SimulatedApp getApp(String appId) {
+        return apps.get(appId);
+    }
+
+    synchronized int getAppCount() {
+        return apps.size();
+    }
+
+    synchronized int getDeploymentCount() {
+        return deployments.size();
+    }
+
+    synchronized int getRequestCount() {
+        return requestCounter;
+    }
+
+    /**
+     * Request counts per method and path template, e.g. {@code GET /v2/apps/{id}}.
+     */
+    synchronized Map<String, Integer> getRequestCounts() {
+        return new TreeMap<>(requestCounts);
+    }
+
+    /**
+     * Ids of all apps in the order they were created.
+     */
+    synchronized List<String> getAppIds() {
+        return new ArrayList<>(apps.keySet());
+    }
+
+    /**
+     * Max number of requests which were in flight at the same time.
+     */
+    int getMaxConcurrentRequests() {
+        return maxConcurrentRequests.get();
+    }
+
+    @Override
+    public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+        maxConcurrentRequests.accumulateAndGet(concurrentRequests.incrementAndGet(), Math::max);
+        try {
+            if (latencyInMs > 0) {
+                Thread.sleep(latencyInMs);
+            }
+            return dispatchSynchronized(request);
+        } finally {
+            concurrentRequests.decrementAndGet();
+        }
+    }
+
+    private MockResponse dispatchSynchronized(RecordedRequest request) {
+        synchronized (this) {
+            requestCounter++;
+            tick();
+
+            if (leaderChangeEveryRequests > 0 && requestCounter % leaderChangeEveryRequests < leaderChangeUnavailableRequests) {
+                return error(503, "Could not determine the current leader");
+            }
+            if (errorRate > 0 && random.nextDouble() < errorRate) {
+                return error(500, "Simulated server error");
+            }
+            return route(request.getMethod(), request.getPath(), request.getBody().readUtf8());
+        }
+    }
+
+    private MockResponse route(String method, String path, String body) {
+        final int queryStart = path.indexOf('?');
+        final String query = queryStart < 0 ? "" : path.substring(queryStart + 1);
+        final List<String> segments = Arrays.stream((queryStart < 0 ? path : path.substring(0, queryStart)).split("/"))
+                .filter(segment -> !segment.isEmpty())
+                .collect(Collectors.toList());
+
+        if (segments.size() == 2 && segments.get(1).equals("deployments")) {
+            return count(method + " /v2/deployments", "GET".equals(method) ? getDeployments() : error(405, "Method not allowed"));
+        } else if (segments.size() == 2 && segments.get(1).equals("queue")) {
+            return count(method + " /v2/queue", "GET".equals(method) ? getQueue() : error(405, "Method not allowed"));
+        } else if (segments.size() == 2 && segments.get(1).equals("apps")) {
+            switch (method) {
+                case "GET":
+                    return count("GET /v2/apps", getApps());
+                case "POST":
+                    return count("POST /v2/apps", createApp(new JsonParser().parse(body).getAsJsonObject()));
+                default:
+                    return count(method + " /v2/apps", error(405, "Method not allowed"));
+            }
+        } else if (segments.size() > 2 && segments.get(1).equals("apps")) {
+            final String last = segments.get(segments.size() - 1);
+            if (last.equals("tasks") || last.equals("restart")) {
+                final String appId = "/" + String.join("/", segments.subList(2, segments.size() - 1));
+                if (last.equals("tasks") && "GET".equals(method)) {
+                    return count("GET /v2/apps/{id}/tasks", getAppTasks(appId));
+                } else if (last.equals("restart") && "POST".equals(method)) {
+                    return count("POST /v2/apps/{id}/restart", restartApp(appId, query.contains("force=true")));
+                }
+            }
+
+            final String appId = "/" + String.join("/", segments.subList(2, segments.size()));
+            switch (method) {
+                case "GET":
+                    return count("GET /v2/apps/{id}", getAppResponse(appId));
+                case "PUT":
+                    return count("PUT /v2/apps/{id}", updateApp(appId, new JsonParser().parse(body).getAsJsonObject(), query.contains("force=true")));
+                case "DELETE":
+                    return count("DELETE /v2/apps/{id}", deleteApp(appId));
+                default:
+                    return count(method + " /v2/apps/{id}", error(405, "Method not allowed"));
+            }
+        }
+        return count(method + " " + path, error(404, "Not found"));
+    }
+
+    private MockResponse count(String request, MockResponse response) {
+        requestCounts.merge(request, 1, Integer::sum);
+        return response;
+    }
+
+    private MockResponse getApps() {
+        final JsonArray appsJson = new JsonArray();
+        apps.values().forEach(app -> appsJson.add(app.toJson(false)));
+        final JsonObject response = new JsonObject();
+        response.add("apps", appsJson);
+        return ok(response);
+    }
+
+    private MockResponse getAppResponse(String appId) {
+        final SimulatedApp app = apps.get(appId);
+        if (app == null) {
+            return error(404, "App '" + appId + "' does not exist");
+        }
+        final JsonObject response = new JsonObject();
+        response.add("app", app.toJson(true));
+        return ok(response);
+    }
+
+    private MockResponse getAppTasks(String appId) {
+        final SimulatedApp app = apps.get(appId);
+        if (app == null) {
+            return error(404, "App '" + appId + "' does not exist");
+        }
+        final JsonObject response = new JsonObject();
+        response.add("tasks", app.tasksToJson());
+        return ok(response);
+    }
+
+    private MockResponse createApp(JsonObject definition) {
+        final String appId = Utils.normalizeAppId(definition.get("id").getAsString());
+        if (apps.containsKey(appId)) {
+            return error(409, "An app with id [" + appId + "] already exists.");
+        }
+        definition.addProperty("id", appId);
+        final SimulatedApp app = new SimulatedApp(appId, definition, nextVersion());
+        apps.put(appId, app);
+        startDeployment(app, true, "StartApplication", "ScaleApplication");
+        return ok(app.toJson(false));
+    }
+
+    private MockResponse updateApp(String appId, JsonObject update, boolean force) {
+        final SimulatedApp app = apps.get(appId);
+        if (app == null) {
+            // Marathon creates apps on PUT as well
+            update.addProperty("id", appId);
+            final SimulatedApp created = new SimulatedApp(appId, update, nextVersion());
+            apps.put(appId, created);
+            return ok(deploymentResult(startDeployment(created, true, "StartApplication", "ScaleApplication")));
+        }
+        if (app.deployment != null && !force) {
+            return error(409, "App is locked by one or more deployments.");
+        }
+
+        boolean onlyScaling = true;
+        for (final Map.Entry<String, JsonElement> field : update.entrySet()) {
+            if (!field.getKey().equals("id") && !field.getValue().equals(app.definition.get(field.getKey()))) {
+                onlyScaling &= field.getKey().equals("instances");
+                app.definition.add(field.getKey(), field.getValue());
+            }
+        }
+        app.version = nextVersion();
+        return ok(deploymentResult(onlyScaling
+                ? startDeployment(app, false, "ScaleApplication")
+                : startDeployment(app, true, "RestartApplication")));
+    }
+
+    private MockResponse restartApp(String appId, boolean force) {
+        final SimulatedApp app = apps.get(appId);
+        if (app == null) {
+            return error(404, "App '" + appId + "' does not exist");
+        }
+        if (app.deployment != null && !force) {
+            return error(409, "App is locked by one or more deployments.");
+        }
+        app.version = nextVersion();
+        return ok(deploymentResult(startDeployment(app, true, "RestartApplication")));
+    }
+
+    private MockResponse deleteApp(String appId) {
+        final SimulatedApp app = apps.remove(appId);
+        if (app == null) {
+            return error(404, "App '" + appId + "' does not exist");
+        }
+        if (app.deployment != null) {
+            deployments.remove(app.deployment.id);
+        }
+        final JsonObject result = new JsonObject();
+        result.addProperty("version", nextVersion());
+        result.addProperty("deploymentId", UUID.randomUUID().toString());
+        return ok(result);
+    }
+
+    private MockResponse getDeployments() {
+        final JsonArray deploymentsJson = new JsonArray();
+        deployments.values().forEach(deployment -> deploymentsJson.add(deployment.toJson()));
+        return ok(deploymentsJson);
+    }
+
+    private MockResponse getQueue() {
+        final JsonArray queue = new JsonArray();
+        for (final SimulatedDeployment deployment : deployments.values()) {
+            final int missing = deployment.app.instances() - deployment.targetTasks().size();
+            if (missing > 0) {
+                final JsonObject element = new JsonObject();
+                element.addProperty("count", missing);
+                element.add("app", deployment.app.toJson(false));
+                final JsonObject offers = new JsonObject();
+                offers.addProperty("processedOffersCount", 1);
+                offers.addProperty("unusedOffersCount", 0);
+                element.add("processedOffersSummary", offers);
+                queue.add(element);
+            }
+        }
+        final JsonObject response = new JsonObject();
+        response.add("queue", queue);
+        return ok(response);
+    }
+
+    /**
+     * Starts a deployment running one step per action, every step but the last one takes a single tick.
+     */
+    private SimulatedDeployment startDeployment(SimulatedApp app, boolean restart, String... actions) {
+        if (app.deployment != null) {
+            deployments.remove(app.deployment.id);
+        }
+        final SimulatedDeployment deployment = new SimulatedDeployment(app, restart, Arrays.asList(actions));
+        app.deployment = deployment;
+        deployments.put(deployment.id, deployment);
+        return deployment;
+    }
+
+    private void tick() {
+        tick++;
+        final Iterator<SimulatedDeployment> iterator = deployments.values().iterator();
+        while (iterator.hasNext()) {
+            final SimulatedDeployment deployment = iterator.next();
+            if (deployment.step()) {
+                deployment.app.deployment = null;
+                iterator.remove();
+            }
+        }
+    }
+
+    private SimulatedTask launchTask(SimulatedApp app) {
+        final SimulatedTask task = new SimulatedTask();
+        taskCounter++;
+        task.id = app.id.substring(1).replace('/', '_') + "." + taskCounter;
+        task.host = "agent-" + (taskCounter % 100) + ".simulated";
+        task.port = 31000 + (int) (taskCounter % 1000);
+        task.version = app.version;
+        task.stagedAtTick = tick;
+        task.healthyAtTick = tick + ticksToHealthy;
+        app.tasks.add(task);
+        return task;
+    }
+
+    private String nextVersion() {
+        return EPOCH.plusMillis(tick * 1000 + taskCounter).toString();
+    }
+
+    private static MockResponse ok(JsonElement body) {
+        return new MockResponse().setResponseCode(200).setHeader("Content-Type", "application/json")
+                .setBody(ModelUtils.GSON.toJson(body));
+    }
+
+    private static MockResponse error(int status, String message) {
+        final JsonObject body = new JsonObject();
+        body.addProperty("message", message);
+        return new MockResponse().setResponseCode(status).setHeader("Content-Type", "application/json")
+                .setBody(ModelUtils.GSON.toJson(body));
+    }
+
+    private JsonObject deploymentResult(SimulatedDeployment deployment) {
+        final JsonObject result = new JsonObject();
+        result.addProperty("version", deployment.version);
+        result.addProperty("deploymentId", deployment.id);
+        return result;
+    }
+
+    final class SimulatedApp {
+
+        private final String id;
+        private final JsonObject definition;
+        private final List<SimulatedTask> tasks = new ArrayList<>();
+        private String version;
+        private SimulatedDeployment deployment;
+
+        private SimulatedApp(String id, JsonObject definition, String version) {
+            this.id = id;
+            this.definition = definition;
+            this.version = version;
+        }
+
+        int instances() {
+            return definition.has("instances") ? definition.get("instances").getAsInt() : 1;
+        }
+
+        List<SimulatedTask> getTasks() {
+            return tasks;
+        }
+
+        String getVersion() {
+            return version;
+        }
+
+        private JsonObject toJson(boolean embedTasks) {
+            final JsonObject json = new JsonObject();
+            definition.entrySet().forEach(field -> json.add(field.getKey(), field.getValue()));
+            json.addProperty("version", version);
+            json.addProperty("tasksStaged", tasks.stream().filter(SimulatedTask::isStaged).count());
+            json.addProperty("tasksRunning", tasks.stream().filter(task -> !task.isStaged()).count());
+            json.addProperty("tasksHealthy", tasks.stream().filter(SimulatedTask::isHealthy).count());
+            json.addProperty("tasksUnhealthy", tasks.stream().filter(task -> !task.isStaged() && !task.isHealthy()).count());
+            final JsonArray deploymentIds = new JsonArray();
+            if (deployment != null) {
+                final JsonObject deploymentId = new JsonObject();
+                deploymentId.addProperty("id", deployment.id);
+                deploymentIds.add(deploymentId);
+            }
+            json.add("deployments", deploymentIds);
+            if (embedTasks) {
+                json.add("tasks", tasksToJson());
+            }
+            return json;
+        }
+
+        private JsonArray tasksToJson() {
+            final JsonArray tasksJson = new JsonArray();
+            tasks.forEach(task -> tasksJson.add(task.toJson(id)));
+            return tasksJson;
+        }
+    }
+
+    final class SimulatedTask {
+
+        private String id;
+        private String host;
+        private int port;
+        private String version;
+        private long stagedAtTick;
+        private long healthyAtTick;
+
+        boolean isStaged() {
+            return tick <= stagedAtTick;
+        }
+
+        boolean isHealthy() {
+            return tick >= healthyAtTick;
+        }
+
+        String getVersion() {
+            return version;
+        }
+
+        private JsonObject toJson(String appId) {
+            final JsonObject json = new JsonObject();
+            json.addProperty("id", id);
+            json.addProperty("appId", appId);
+            json.addProperty("host", host);
+            final JsonArray ports = new JsonArray();
+            ports.add(new JsonPrimitive(port));
+            json.add("ports", ports);
+            json.addProperty("version", version);
+            json.addProperty("stagedAt", EPOCH.plusSeconds(stagedAtTick).toString());
+            if (!isStaged()) {
+                json.addProperty("startedAt", EPOCH.plusSeconds(stagedAtTick + 1).toString());
+            }
+            final JsonArray healthCheckResults = new JsonArray();
+            if (!isStaged()) {
+                final JsonObject healthCheckResult = new JsonObject();
+                healthCheckResult.addProperty("alive", isHealthy());
+                healthCheckResult.addProperty("consecutiveFailures", 0);
+                healthCheckResult.addProperty("taskId", id);
+                healthCheckResults.add(healthCheckResult);
+            }
+            json.add("healthCheckResults", healthCheckResults);
+            return json;
+        }
+    }
+
+    final class SimulatedDeployment {
+
+        private final String id = UUID.randomUUID().toString();
+        private final SimulatedApp app;
+        private final String version;
+        private final boolean restart;
+        private final List<String> actions;
+        private int currentStep = 1;
+
+        private SimulatedDeployment(SimulatedApp app, boolean restart, List<String> actions) {
+            this.app = app;
+            this.version = app.version;
+            this.restart = restart;
+            this.actions = actions;
+        }
+
+        private List<SimulatedTask> targetTasks() {
+            return app.tasks.stream().filter(task -> !restart || task.version.equals(version)).collect(Collectors.toList());
+        }
+
+        /**
+         * Advances the deployment by one step and returns whether it finished.
+         */
+        private boolean step() {
+            if (currentStep < actions.size()) {
+                currentStep++;
+                return false;
+            }
+
+            final List<SimulatedTask> targetTasks = targetTasks();
+            if (targetTasks.size() < app.instances()) {
+                launchTask(app);
+            } else if (targetTasks.size() > app.instances()) {
+                app.tasks.remove(targetTasks.get(targetTasks.size() - 1));
+            }
+
+            final long healthyTargetTasks = targetTasks().stream().filter(SimulatedTask::isHealthy).count();
+            final List<SimulatedTask> oldTasks = new ArrayList<>(app.tasks);
+            oldTasks.removeAll(targetTasks());
+            while (!oldTasks.isEmpty() && healthyTargetTasks + oldTasks.size() > app.instances()) {
+                app.tasks.remove(oldTasks.remove(0));
+            }
+
+            return oldTasks.isEmpty()
+                    && targetTasks().size() == app.instances()
+                    && healthyTargetTasks == app.instances();
+        }
+
+        private JsonObject action(String action) {
+            final JsonObject json = new JsonObject();
+            json.addProperty("action", action);
+            json.addProperty("app", app.id);
+            return json;
+        }
+
+        private JsonObject toJson() {
+            final JsonObject json = new JsonObject();
+            json.addProperty("id", id);
+            json.addProperty("version", version);
+            final JsonArray affectedApps = new JsonArray();
+            affectedApps.add(new JsonPrimitive(app.id));
+            json.add("affectedApps", affectedApps);
+
+            final JsonArray steps = new JsonArray();
+            for (final String action : actions) {
+                final JsonArray stepActions = new JsonArray();
+                stepActions.add(action(action));
+                final JsonObject step = new JsonObject();
+                step.add("actions", stepActions);
+                steps.add(step);
+            }
+            json.add("steps", steps);
+
+            final JsonArray currentActions = new JsonArray();
+            currentActions.add(action(actions.get(currentStep - 1)));
+            json.add("currentActions", currentActions);
+            json.addProperty("currentStep", currentStep);
+            json.addProperty("totalSteps", actions.size());
+            return json;
+        }
+    }
+}
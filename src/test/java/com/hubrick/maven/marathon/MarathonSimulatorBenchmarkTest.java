@@ -0,0 +1,326 @@
+/**
+ * Copyright (C) ${project.inceptionYear} Etaia AS (oss@hubrick.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hubrick.maven.marathon;
+
+import com.google.common.base.Charsets;
+import com.google.common.base.Stopwatch;
+import com.squareup.okhttp.mockwebserver.MockWebServer;
+import org.apache.maven.plugin.Mojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.configuration.DefaultPlexusConfiguration;
+import org.codehaus.plexus.configuration.PlexusConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import javax.net.ServerSocketFactory;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static java.util.stream.Collectors.toList;
+
+/**
+ * Runs the goals against a {@link MarathonSimulator} with thousands of apps and tasks. The request counts guard against
+ * regressions in the number of API calls per app, wall time and allocated bytes are reported for comparison when
+ * running with {@code -Dbenchmark.report=true}.
+ */
+public class MarathonSimulatorBenchmarkTest extends AbstractMarathonMojoTestWithJUnit4 {
+
+    private static final int APP_COUNT = 1000;
+    private static final int TASK_COUNT = 5000;
+
+    @Rule
+    public final ExpectedException thrown = ExpectedException.none();
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final MockWebServer server = new MockWebServer();
+    private final MarathonSimulator simulator = new MarathonSimulator();
+
+    @Before
+    public void setUpServer() throws IOException {
+        // without TCP_NODELAY every request waits for a delayed ACK and the benchmarks only measure that
+        server.setServerSocketFactory(new ServerSocketFactory() {
+            @Override
+            public ServerSocket createServerSocket() throws IOException {
+                return new ServerSocket() {
+                    @Override
+                    public Socket accept() throws IOException {
+                        final Socket socket = super.accept();
+                        socket.setTcpNoDelay(true);
+                        return socket;
+                    }
+                };
+            }
+
+            @Override
+            public ServerSocket createServerSocket(int port) throws IOException {
+                return createServerSocket(port, 50);
+            }
+
+            @Override
+            public ServerSocket createServerSocket(int port, int backlog) throws IOException {
+                return createServerSocket(port, backlog, null);
+            }
+
+            @Override
+            public ServerSocket createServerSocket(int port, int backlog, InetAddress address) throws IOException {
+                final ServerSocket serverSocket = createServerSocket();
+                serverSocket.bind(new InetSocketAddress(address, port), backlog);
+                return serverSocket;
+            }
+        });
+        server.setDispatcher(simulator);
+        server.start();
+    }
+
+    @After
+    public void shutDownServer() throws IOException {
+        server.shutdown();
+    }
+
+    private String writeConfig(String appId, int instances) throws Exception {
+        final Path file = folder.getRoot().toPath().resolve(appId.substring(1).replace('/', '_') + ".json");
+        final String config = "{\"id\": \"" + appId + "\", \"instances\": " + instances + ", \"cpus\": 0.1, \"mem\": 128,"
+                + " \"cmd\": \"sleep 1000\", \"env\": {\"BUILD\": \"" + file.getFileName() + "\"}}";
+        Files.write(file, config.getBytes(Charsets.UTF_8));
+        return file.toString();
+    }
+
+    private PlexusConfiguration configuration(String marathonConfigFile) {
+        final PlexusConfiguration pluginCfg = new DefaultPlexusConfiguration("configuration");
+        pluginCfg.addChild("marathonHost", server.getUrl("").toString());
+        pluginCfg.addChild("marathonConfigFile", marathonConfigFile);
+        return pluginCfg;
+    }
+
+    private DeployMojo lookupDeployMojo(String marathonConfigFile, boolean wait) throws Exception {
+        final PlexusConfiguration pluginCfg = configuration(marathonConfigFile);
+        pluginCfg.addChild("waitOnRunningDeployment", "false");
+        pluginCfg.addChild("waitOnRunningDeploymentTimeoutInSec", "300");
+        pluginCfg.addChild("waitForSuccessfulDeployment", String.valueOf(wait));
+        pluginCfg.addChild("waitForSuccessfulDeploymentTimeoutInSec", "300");
+        pluginCfg.addChild("offerStarvationTimeoutInSec", "0");
+        return (DeployMojo) lookupMarathonMojo("deploy", pluginCfg);
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    private void report(String name, int units, Stopwatch stopwatch, String allocation) {
+        if (!Boolean.getBoolean("benchmark.report")) {
+            return;
+        }
+        System.out.println(String.format("%s: %d requests for %d units in %d ms, %s, request counts %s",
+                name, simulator.getRequestCount(), units, stopwatch.elapsedMillis(), allocation, simulator.getRequestCounts()));
+    }
+
+    private static String allocationPerUnit(long allocatedBytes, int units) {
+        return allocatedBytes / 1024 / units + " KB allocated per unit";
+    }
+
+    /**
+     * The budgets are several times the figures of a developer machine, so they catch regressions like an additional
+     * round trip or copy of the response per unit rather than the noise of a shared build agent.
+     */
+    private static void assertWithinBudget(String name, int units, Stopwatch stopwatch, long maxMsPerUnit,
+                                           long allocatedBytes, long maxKbPerUnit) {
+        assertTrue(name + " took " + stopwatch.elapsedMillis() + " ms for " + units + " units",
+                stopwatch.elapsedMillis() <= maxMsPerUnit * units);
+        assertTrue(name + " allocated " + allocatedBytes / 1024 + " KB for " + units + " units",
+                allocatedBytes / 1024 <= maxKbPerUnit * units);
+    }
+
+    @Test
+    public void testDeployThousandsOfApps() throws Exception {
+        for (int i = 0; i < APP_COUNT / 2; i++) {
+            simulator.addRunningApp("/group-" + (i % 10) + "/existing-service-" + i, 2);
+        }
+        final Mojo[] mojos = new Mojo[APP_COUNT];
+        for (int i = 0; i < APP_COUNT; i++) {
+            final String appId = i % 2 == 0 ? "/group-" + (i / 2 % 10) + "/existing-service-" + (i / 2) : "/new-service-" + i;
+            mojos[i] = lookupDeployMojo(writeConfig(appId, 2), false);
+        }
+
+        final long allocatedBefore = allocatedBytes();
+        final Stopwatch stopwatch = new Stopwatch().start();
+        for (Mojo mojo : mojos) {
+            mojo.execute();
+        }
+        stopwatch.stop();
+        final long allocated = allocatedBytes() - allocatedBefore;
+        report("deploy", APP_COUNT, stopwatch, allocationPerUnit(allocated, APP_COUNT));
+        assertWithinBudget("deploy", APP_COUNT, stopwatch, 25, allocated, 1024);
+
+        assertEquals(APP_COUNT, simulator.getAppCount());
+        final Map<String, Integer> requestCounts = simulator.getRequestCounts();
+        assertEquals(Integer.valueOf(APP_COUNT + APP_COUNT / 2), requestCounts.get("GET /v2/apps/{id}"));
+        assertEquals(Integer.valueOf(APP_COUNT / 2), requestCounts.get("PUT /v2/apps/{id}"));
+        assertEquals(Integer.valueOf(APP_COUNT / 2), requestCounts.get("POST /v2/apps"));
+        assertEquals(APP_COUNT * 5 / 2, simulator.getRequestCount());
+    }
+
+    @Test
+    public void testDeleteThousandsOfApps() throws Exception {
+        final Mojo[] mojos = new Mojo[APP_COUNT];
+        for (int i = 0; i < APP_COUNT; i++) {
+            simulator.addRunningApp("/service-" + i, 2);
+            mojos[i] = lookupMarathonMojo("delete", configuration(writeConfig("/service-" + i, 2)));
+        }
+
+        final long allocatedBefore = allocatedBytes();
+        final Stopwatch stopwatch = new Stopwatch().start();
+        for (Mojo mojo : mojos) {
+            mojo.execute();
+        }
+        stopwatch.stop();
+        final long allocated = allocatedBytes() - allocatedBefore;
+        report("delete", APP_COUNT, stopwatch, allocationPerUnit(allocated, APP_COUNT));
+        assertWithinBudget("delete", APP_COUNT, stopwatch, 10, allocated, 1024);
+
+        assertEquals(0, simulator.getAppCount());
+        assertEquals(Integer.valueOf(APP_COUNT), simulator.getRequestCounts().get("GET /v2/apps/{id}"));
+        assertEquals(Integer.valueOf(APP_COUNT), simulator.getRequestCounts().get("DELETE /v2/apps/{id}"));
+        assertEquals(APP_COUNT * 2, simulator.getRequestCount());
+    }
+
+    @Test
+    public void testAppTasksOfAppWithThousandsOfTasks() throws Exception {
+        simulator.addRunningApp("/large-service", TASK_COUNT);
+        final PlexusConfiguration pluginCfg = configuration(writeConfig("/large-service", TASK_COUNT));
+        pluginCfg.addChild("propertyPrefix", "large-service-");
+        pluginCfg.addChild("delay", "0");
+        final AppTasksMojo mojo = (AppTasksMojo) lookupMarathonMojo("apptasks", pluginCfg);
+        final MavenProject project = new MavenProject();
+        setVariableValueToObject(mojo, "project", project);
+
+        final Stopwatch stopwatch = new Stopwatch().start();
+        mojo.execute();
+        stopwatch.stop();
+        // the tasks are fetched on an executor thread, so the allocation of this thread says nothing
+        report("apptasks", TASK_COUNT, stopwatch, "allocation not measured");
+        assertTrue("apptasks took " + stopwatch.elapsedMillis() + " ms", stopwatch.elapsedMillis() <= TASK_COUNT);
+
+        assertEquals(TASK_COUNT * 2, project.getProperties().size());
+        assertEquals("agent-0.simulated", project.getProperties().getProperty("large-service-host0"));
+        assertEquals(Integer.valueOf(1), simulator.getRequestCounts().get("GET /v2/apps/{id}/tasks"));
+        assertEquals(2, simulator.getRequestCount());
+    }
+
+    @Test
+    public void testDeployWaitsForRollingRestartDespiteLatency() throws Exception {
+        simulator.withLatency(5).withTicksToHealthy(1);
+        simulator.addRunningApp("/rolling-service", 5);
+        final String oldVersion = simulator.getApp("/rolling-service").getVersion();
+
+        final DeployMojo mojo = lookupDeployMojo(writeConfig("/rolling-service", 5), true);
+        mojo.overridePolling(0, 100);
+        mojo.execute();
+
+        final MarathonSimulator.SimulatedApp app = simulator.getApp("/rolling-service");
+        assertFalse(oldVersion.equals(app.getVersion()));
+        assertEquals(5, app.getTasks().size());
+        for (MarathonSimulator.SimulatedTask task : app.getTasks()) {
+            assertEquals(app.getVersion(), task.getVersion());
+            assertTrue(task.isHealthy());
+        }
+        assertEquals(0, simulator.getDeploymentCount());
+    }
+
+    @Test
+    public void testDeployFailsDuringLeaderChange() throws Exception {
+        simulator.withLeaderChanges(2, 1);
+        simulator.addRunningApp("/service", 1);
+        thrown.expect(MojoExecutionException.class);
+
+        lookupDeployMojo(writeConfig("/service", 1), false).execute();
+    }
+
+    @Test
+    public void testDeleteSurfacesServerErrors() throws Exception {
+        simulator.withErrorRate(0.2, 42);
+        final Mojo[] mojos = new Mojo[100];
+        for (int i = 0; i < mojos.length; i++) {
+            simulator.addRunningApp("/service-" + i, 1);
+            mojos[i] = lookupMarathonMojo("delete", configuration(writeConfig("/service-" + i, 1)));
+        }
+
+        int failures = 0;
+        for (Mojo mojo : mojos) {
+            try {
+                mojo.execute();
+            } catch (MojoExecutionException e) {
+                failures++;
+            }
+        }
+
+        // every request fails on its own, so either the lookup or the delete of a failed app got a server error
+        assertTrue(failures > 0);
+        assertEquals(failures, simulator.getAppCount());
+        assertEquals(Integer.valueOf(mojos.length - failures), simulator.getRequestCounts().get("DELETE /v2/apps/{id}"));
+    }
+
+    @Test
+    public void testDeployOfNewAppReportsStepProgress() throws Exception {
+        simulator.withTicksToHealthy(1);
+        final List<String> infos = new CopyOnWriteArrayList<>();
+        final DeployMojo mojo = lookupDeployMojo(writeConfig("/new-service", 3), true);
+        mojo.overridePolling(0, 100);
+        mojo.setLog(new SystemStreamLog() {
+            @Override
+            public void info(CharSequence content) {
+                infos.add(content.toString());
+            }
+        });
+
+        mojo.execute();
+
+        // the app is started in a first step and scaled in a second one, which covers the upper half of the progress
+        final List<String> scaling = infos.stream().filter(line -> line.contains("step 2/2 (ScaleApplication)")).collect(toList());
+        assertFalse(infos.toString(), scaling.isEmpty());
+        assertTrue(scaling.get(0), scaling.get(0).contains("50% done"));
+        assertEquals(3, simulator.getApp("/new-service").getTasks().size());
+        assertEquals(0, simulator.getDeploymentCount());
+    }
+
+    @Test
+    public void testDeploymentsAreOnlyLoadedWhenTheAppChanged() throws Exception {
+        simulator.withTicksToHealthy(6);
+        final DeployMojo mojo = lookupDeployMojo(writeConfig("/new-service", 1), true);
+        mojo.overridePolling(0, 100);
+
+        mojo.execute();
+
+        // polls while the task waits for its health check see an unchanged app and reuse the loaded deployment
+        final Map<String, Integer> requestCounts = simulator.getRequestCounts();
+        assertTrue(requestCounts.toString(), requestCounts.get("GET /v2/deployments") < requestCounts.get("GET /v2/apps/{id}") - 1);
+    }
+}
@@ -0,0 +1,191 @@
+/**
+ * Copyright (C) ${project.inceptionYear} Etaia AS (oss@hubrick.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hubrick.maven.marathon;
+
+
+import com.google.common.base.Charsets;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+import com.squareup.okhttp.mockwebserver.rule.MockWebServerRule;
+import org.apache.maven.execution.BuildFailure;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.model.Build;
+import org.apache.maven.model.Model;
+import org.apache.maven.plugin.Mojo;
+import org.apache.maven.plugin.MojoExecution;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.logging.Log;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class ReactorDeployMojoTest extends AbstractMarathonMojoTestWithJUnit4 {
+
+    @Rule
+    public final ExpectedException thrown = ExpectedException.none();
+    @Rule
+    public final MockWebServerRule server = new MockWebServerRule();
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final MarathonSimulator simulator = new MarathonSimulator().withLatency(100);
+
+    private MavenProject project(String artifactId, String marathonConfig) throws Exception {
+        final File buildDirectory = folder.newFolder(artifactId);
+        if (marathonConfig != null) {
+            Files.write(new File(buildDirectory, "marathon.json").toPath(), marathonConfig.getBytes(Charsets.UTF_8));
+        }
+        final Model model = new Model();
+        model.setGroupId("com.example");
+        model.setArtifactId(artifactId);
+        model.setVersion("1.0");
+        final Build build = new Build();
+        build.setDirectory(buildDirectory.getAbsolutePath());
+        model.setBuild(build);
+        return new MavenProject(model);
+    }
+
+    private MavenSession reactor(List<MavenProject> projects) {
+        final MavenSession session = newMavenSession(projects.get(0));
+        session.setProjects(projects);
+        return session;
+    }
+
+    private static void configure(MojoExecution execution, String name, String value) {
+        Xpp3Dom child = execution.getConfiguration().getChild(name);
+        if (child == null) {
+            child = new Xpp3Dom(name);
+            execution.getConfiguration().addChild(child);
+        }
+        child.setValue(value);
+    }
+
+    private void build(MavenSession session, MavenProject project) throws Exception {
+        build(session, project, new SystemStreamLog());
+    }
+
+    private void build(MavenSession session, MavenProject project, Log log) throws Exception {
+        session.setCurrentProject(project);
+        final MojoExecution execution = newMojoExecution("reactor-deploy");
+        configure(execution, "marathonHost", server.getUrl("").toString());
+        configure(execution, "parallelism", "2");
+        configure(execution, "waitOnRunningDeployment", "false");
+        configure(execution, "waitForSuccessfulDeployment", "false");
+        final Mojo mojo = lookupConfiguredMojo(session, execution);
+        mojo.setLog(log);
+        mojo.execute();
+    }
+
+    private List<MavenProject> projects() throws Exception {
+        // the reactor order is the reverse of the order of the app dependencies
+        return Arrays.asList(
+                project("parent", null),
+                project("web", "{\"id\": \"/web\", \"instances\": 1, \"dependencies\": [\"/db\"]}"),
+                project("api", "{\"id\": \"/api\", \"instances\": 1, \"dependencies\": [\"/db\"]}"),
+                project("db", "{\"id\": \"/db\", \"instances\": 1}"));
+    }
+
+    @Test
+    public void testAppsDeployedInDependencyOrderAfterLastModule() throws Exception {
+        server.get().setDispatcher(simulator);
+        final List<MavenProject> projects = projects();
+        final MavenSession session = reactor(projects);
+
+        for (MavenProject project : projects.subList(0, 3)) {
+            build(session, project);
+            assertEquals(0, simulator.getRequestCount());
+        }
+        build(session, projects.get(3));
+
+        final List<String> appIds = simulator.getAppIds();
+        assertEquals(3, appIds.size());
+        assertEquals("/db", appIds.get(0));
+        assertTrue(appIds.containsAll(Arrays.asList("/web", "/api")));
+        // web and api only depend on db, so they were deployed at the same time
+        assertTrue(simulator.getMaxConcurrentRequests() >= 2);
+    }
+
+    @Test
+    public void testNothingDeployedIfModuleFailed() throws Exception {
+        server.get().setDispatcher(simulator);
+        final List<MavenProject> projects = projects();
+        final MavenSession session = reactor(projects);
+
+        build(session, projects.get(0));
+        build(session, projects.get(1));
+        session.getResult().addBuildSummary(new BuildFailure(projects.get(2), 0, new Exception("compilation failed")));
+        build(session, projects.get(3));
+
+        assertEquals(0, simulator.getRequestCount());
+    }
+
+    @Test
+    public void testDependentsOfFailedAppAreSkipped() throws Exception {
+        server.get().setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                return request.getPath().endsWith("/db") ? new MockResponse().setResponseCode(500) : simulator.dispatch(request);
+            }
+        });
+        final List<MavenProject> projects = projects();
+        final MavenSession session = reactor(projects);
+        final List<String> warnings = new CopyOnWriteArrayList<>();
+        final Log log = new SystemStreamLog() {
+            @Override
+            public void warn(CharSequence content) {
+                warnings.add(content.toString());
+            }
+        };
+        thrown.expect(MojoExecutionException.class);
+        thrown.expectMessage("Failed to deploy apps [/db], skipped apps depending on them [/web, /api]");
+
+        for (MavenProject project : projects.subList(0, 3)) {
+            build(session, project);
+        }
+        try {
+            build(session, projects.get(3), log);
+        } finally {
+            assertEquals(Arrays.asList("Skipped app /web because its dependencies [/db] were not deployed",
+                    "Skipped app /api because its dependencies [/db] were not deployed"), warnings);
+            assertEquals(0, simulator.getAppCount());
+        }
+    }
+
+    @Test
+    public void testDuplicateAppIdFails() throws Exception {
+        server.get().setDispatcher(simulator);
+        final List<MavenProject> projects = Arrays.asList(
+                project("web", "{\"id\": \"/web\", \"instances\": 1}"),
+                project("web-copy", "{\"id\": \"/web\", \"instances\": 2}"));
+        final MavenSession session = reactor(projects);
+        thrown.expect(MojoExecutionException.class);
+        thrown.expectMessage("App /web is defined more than once");
+
+        build(session, projects.get(0));
+        build(session, projects.get(1));
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * Copyright (C) ${project.inceptionYear} Etaia AS (oss@hubrick.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hubrick.maven.marathon;
+
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Resources;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+import com.squareup.okhttp.mockwebserver.rule.MockWebServerRule;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.codehaus.plexus.configuration.DefaultPlexusConfiguration;
+import org.codehaus.plexus.configuration.PlexusConfiguration;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+
+public class RestartMojoTest extends AbstractMarathonMojoTestWithJUnit4 {
+
+    public static final String APPS_PATH = "/v2/apps";
+
+    @Rule
+    public final ExpectedException thrown = ExpectedException.none();
+    @Rule
+    public final MockWebServerRule server = new MockWebServerRule();
+
+    private PlexusConfiguration restartConfiguration(boolean waitForSuccessfulDeployment, String... appIds) {
+        PlexusConfiguration pluginCfg = new DefaultPlexusConfiguration("configuration");
+        pluginCfg.addChild("marathonHost", server.getUrl("").toString());
+        pluginCfg.addChild("marathonConfigFile", getTestMarathonConfigFile());
+        final PlexusConfiguration appIdsCfg = new DefaultPlexusConfiguration("appIds");
+        for (String appId : appIds) {
+            appIdsCfg.addChild("appId", appId);
+        }
+        pluginCfg.addChild(appIdsCfg);
+        pluginCfg.addChild("parallelism", "2");
+        pluginCfg.addChild("force", "false");
+        pluginCfg.addChild("waitOnRunningDeployment", "false");
+        pluginCfg.addChild("waitForSuccessfulDeployment", String.valueOf(waitForSuccessfulDeployment));
+        pluginCfg.addChild("waitForSuccessfulDeploymentTimeoutInSec", "300");
+        return pluginCfg;
+    }
+
+    @Test
+    public void testSuccessfulRestart() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(200).setBody(
+                Resources.toString(Resources.getResource(RestartMojoTest.class, "/getAppResponse.json"), Charsets.UTF_8)));
+        server.enqueue(new MockResponse().setResponseCode(200).setBody(
+                Resources.toString(Resources.getResource(RestartMojoTest.class, "/updateAppResponse.json"), Charsets.UTF_8)));
+        server.enqueue(new MockResponse().setResponseCode(500));
+
+        final RestartMojo mojo = (RestartMojo) lookupMarathonMojo("restart", restartConfiguration(false));
+        assertNotNull(mojo);
+
+        mojo.execute();
+
+        assertEquals(2, server.getRequestCount());
+        RecordedRequest getAppRequest = server.takeRequest();
+        assertEquals(APPS_PATH + "//example-service", getAppRequest.getPath());
+        assertEquals("GET", getAppRequest.getMethod());
+        RecordedRequest restartRequest = server.takeRequest();
+        assertEquals(APPS_PATH + "//example-service/restart?force=false", restartRequest.getPath());
+        assertEquals("POST", restartRequest.getMethod());
+    }
+
+    @Test
+    public void testRestartWaitsForRestartedVersion() throws Exception {
+        final MarathonSimulator simulator = new MarathonSimulator().withTicksToHealthy(1);
+        simulator.addRunningApp("/service-a", 2);
+        simulator.addRunningApp("/service-b", 2);
+        server.get().setDispatcher(simulator);
+
+        final RestartMojo mojo = (RestartMojo) lookupMarathonMojo("restart", restartConfiguration(true, "/service-a", "service-b"));
+        mojo.overridePolling(0, 100);
+
+        mojo.execute();
+
+        assertEquals(Integer.valueOf(2), simulator.getRequestCounts().get("POST /v2/apps/{id}/restart"));
+        assertEquals(0, simulator.getDeploymentCount());
+        for (String appId : new String[]{"/service-a", "/service-b"}) {
+            final MarathonSimulator.SimulatedApp app = simulator.getApp(appId);
+            assertEquals(2, app.getTasks().size());
+            for (MarathonSimulator.SimulatedTask task : app.getTasks()) {
+                assertEquals(app.getVersion(), task.getVersion());
+                assertTrue(task.isHealthy());
+            }
+        }
+    }
+
+    @Test
+    public void testRestartFailedDueToLockedApp() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(200).setBody(
+                Resources.toString(Resources.getResource(RestartMojoTest.class, "/getAppResponse.json"), Charsets.UTF_8)));
+        server.enqueue(new MockResponse().setResponseCode(409).setBody("{\"message\": \"App is locked by one or more deployments.\"}"));
+        thrown.expect(MojoExecutionException.class);
+
+        final RestartMojo mojo = (RestartMojo) lookupMarathonMojo("restart", restartConfiguration(false, "/example-service"));
+        assertNotNull(mojo);
+
+        mojo.execute();
+    }
+}
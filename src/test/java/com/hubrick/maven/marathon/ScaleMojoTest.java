@@ -0,0 +1,164 @@
+/**
+ * Copyright (C) ${project.inceptionYear} Etaia AS (oss@hubrick.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hubrick.maven.marathon;
+
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Resources;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+import com.squareup.okhttp.mockwebserver.rule.MockWebServerRule;
+import mesosphere.marathon.client.model.v2.App;
+import mesosphere.marathon.client.utils.ModelUtils;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.codehaus.plexus.configuration.DefaultPlexusConfiguration;
+import org.codehaus.plexus.configuration.PlexusConfiguration;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class ScaleMojoTest extends AbstractMarathonMojoTestWithJUnit4 {
+
+    public static final String APPS_PATH = "/v2/apps";
+
+    @Rule
+    public final ExpectedException thrown = ExpectedException.none();
+    @Rule
+    public final MockWebServerRule server = new MockWebServerRule();
+
+    private final Map<String, App> updates = new ConcurrentHashMap<>();
+
+    private ScaleMojo lookupScaleMojo(String instances, String... appIds) throws Exception {
+        return (ScaleMojo) lookupMarathonMojo("scale", scaleConfiguration(instances, appIds));
+    }
+
+    private PlexusConfiguration scaleConfiguration(String instances, String... appIds) {
+        PlexusConfiguration pluginCfg = new DefaultPlexusConfiguration("configuration");
+        pluginCfg.addChild("marathonHost", server.getUrl("").toString());
+        pluginCfg.addChild("marathonConfigFile", getTestMarathonConfigFile());
+        if (instances != null) {
+            pluginCfg.addChild("instances", instances);
+        }
+        final PlexusConfiguration appIdsCfg = new DefaultPlexusConfiguration("appIds");
+        for (String appId : appIds) {
+            appIdsCfg.addChild("appId", appId);
+        }
+        pluginCfg.addChild(appIdsCfg);
+        pluginCfg.addChild("parallelism", "2");
+        pluginCfg.addChild("force", "false");
+        pluginCfg.addChild("waitOnRunningDeployment", "false");
+        pluginCfg.addChild("waitForSuccessfulDeployment", "false");
+        pluginCfg.addChild("waitForSuccessfulDeploymentTimeoutInSec", "300");
+        return pluginCfg;
+    }
+
+    private void dispatchAppRequests() {
+        server.get().setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                try {
+                    if (request.getPath().startsWith(APPS_PATH + "/") && "GET".equals(request.getMethod())) {
+                        return new MockResponse().setResponseCode(200).setBody(
+                                Resources.toString(Resources.getResource(ScaleMojoTest.class, "/getAppResponse.json"), Charsets.UTF_8));
+                    } else if (request.getPath().startsWith(APPS_PATH + "/") && "PUT".equals(request.getMethod())) {
+                        updates.put(request.getPath(), ModelUtils.GSON.fromJson(request.getBody().readUtf8(), App.class));
+                        return new MockResponse().setResponseCode(200).setBody(
+                                Resources.toString(Resources.getResource(ScaleMojoTest.class, "/updateAppResponse.json"), Charsets.UTF_8));
+                    }
+                    return new MockResponse().setResponseCode(500);
+                } catch (Exception e) {
+                    return new MockResponse().setResponseCode(500);
+                }
+            }
+        });
+    }
+
+    @Test
+    public void testSuccessfulScaleOfMultipleApps() throws Exception {
+        dispatchAppRequests();
+
+        final ScaleMojo mojo = lookupScaleMojo("5", "/service-a", "service-b=x1.5", "/service-c=2");
+        assertNotNull(mojo);
+
+        mojo.execute();
+
+        // service-c already runs 2 instances and is not updated
+        assertEquals(5, server.getRequestCount());
+        assertEquals(2, updates.size());
+
+        final App serviceA = updates.get(APPS_PATH + "//service-a?force=false");
+        assertNotNull(serviceA);
+        assertEquals(Integer.valueOf(5), serviceA.getInstances());
+        assertNull(serviceA.getEnv());
+        assertNull(serviceA.getContainer());
+
+        final App serviceB = updates.get(APPS_PATH + "//service-b?force=false");
+        assertNotNull(serviceB);
+        assertEquals(Integer.valueOf(3), serviceB.getInstances());
+    }
+
+    @Test
+    public void testScaleFailedDueToMissingTarget() throws Exception {
+        thrown.expect(MojoExecutionException.class);
+
+        final ScaleMojo mojo = lookupScaleMojo(null, "/service-a");
+        assertNotNull(mojo);
+
+        mojo.execute();
+    }
+
+    @Test
+    public void testScaleFailedDueToFailedAppUpdate() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(200).setBody(
+                Resources.toString(Resources.getResource(ScaleMojoTest.class, "/getAppResponse.json"), Charsets.UTF_8)));
+        server.enqueue(new MockResponse().setResponseCode(500));
+        thrown.expect(MojoExecutionException.class);
+
+        final ScaleMojo mojo = lookupScaleMojo("5");
+        assertNotNull(mojo);
+
+        mojo.execute();
+    }
+
+    @Test
+    public void testScaleWaitsUntilNewInstancesAreHealthy() throws Exception {
+        final MarathonSimulator simulator = new MarathonSimulator().withTicksToHealthy(1);
+        simulator.addRunningApp("/service-a", 2);
+        final String initialVersion = simulator.getApp("/service-a").getVersion();
+        server.get().setDispatcher(simulator);
+
+        final PlexusConfiguration pluginCfg = scaleConfiguration("4", "/service-a");
+        pluginCfg.getChild("waitForSuccessfulDeployment").setValue("true");
+        final ScaleMojo mojo = (ScaleMojo) lookupMarathonMojo("scale", pluginCfg);
+        mojo.overridePolling(0, 100);
+
+        mojo.execute();
+
+        // the scaling finished only once all four tasks were healthy, the old ones were kept
+        final MarathonSimulator.SimulatedApp app = simulator.getApp("/service-a");
+        assertEquals(4, app.getTasks().size());
+        assertEquals(0, simulator.getDeploymentCount());
+        assertEquals(2, app.getTasks().stream().filter(task -> initialVersion.equals(task.getVersion())).count());
+        for (MarathonSimulator.SimulatedTask task : app.getTasks()) {
+            assertTrue(task.isHealthy());
+        }
+        assertTrue(simulator.getRequestCounts().get("GET /v2/apps/{id}") > 2);
+    }
+}
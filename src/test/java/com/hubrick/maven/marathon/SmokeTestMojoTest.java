@@ -0,0 +1,126 @@
+/**
+ * Copyright (C) ${project.inceptionYear} Etaia AS (oss@hubrick.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hubrick.maven.marathon;
+
+
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+import com.squareup.okhttp.mockwebserver.rule.MockWebServerRule;
+import org.apache.maven.plugin.MojoFailureException;
+import org.codehaus.plexus.configuration.DefaultPlexusConfiguration;
+import org.codehaus.plexus.configuration.PlexusConfiguration;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.ExpectedException;
+
+import java.util.concurrent.TimeUnit;
+
+public class SmokeTestMojoTest extends AbstractMarathonMojoTestWithJUnit4 {
+
+    public static final String APP_ID = "/example-service";
+    public static final String SMOKE_TEST_PATH = "/example/v1.0/healthcheck";
+
+    @Rule
+    public final ExpectedException thrown = ExpectedException.none();
+    @Rule
+    public final MockWebServerRule server = new MockWebServerRule();
+    @Rule
+    public final MockWebServerRule firstTask = new MockWebServerRule();
+    @Rule
+    public final MockWebServerRule secondTask = new MockWebServerRule();
+
+    private SmokeTestMojo lookupSmokeTestMojo(String maxErrorRate, String maxP99LatencyInMs) throws Exception {
+        PlexusConfiguration pluginCfg = new DefaultPlexusConfiguration("configuration");
+        pluginCfg.addChild("marathonHost", server.getUrl("").toString());
+        pluginCfg.addChild("marathonConfigFile", getTestMarathonConfigFile());
+        pluginCfg.addChild("smokeTestPath", SMOKE_TEST_PATH);
+        pluginCfg.addChild("smokeTestPortIndex", "0");
+        pluginCfg.addChild("smokeTestRequestsPerTask", "5");
+        pluginCfg.addChild("smokeTestConcurrency", "4");
+        pluginCfg.addChild("smokeTestTimeoutInMs", "1000");
+        pluginCfg.addChild("smokeTestMaxErrorRate", maxErrorRate);
+        pluginCfg.addChild("smokeTestMaxP99LatencyInMs", maxP99LatencyInMs);
+        return (SmokeTestMojo) lookupMarathonMojo("smoketest", pluginCfg);
+    }
+
+    private void enqueueAppTasks() {
+        server.enqueue(new MockResponse().setResponseCode(200).setBody("{\"tasks\": ["
+                + task("example-service.1", firstTask) + ", "
+                + task("example-service.2", secondTask) + "]}"));
+    }
+
+    private static String task(String taskId, MockWebServerRule taskServer) {
+        return "{\"id\": \"" + taskId + "\", \"appId\": \"" + APP_ID + "\", \"host\": \"" + taskServer.getHostName()
+                + "\", \"ports\": [" + taskServer.getPort() + ", 1], \"version\": \"2016-07-27T08:05:41.822Z\"}";
+    }
+
+    private static void respondWith(MockWebServerRule taskServer, MockResponse response) {
+        taskServer.get().setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                return response;
+            }
+        });
+    }
+
+    @Test
+    public void testSuccessfulSmokeTest() throws Exception {
+        enqueueAppTasks();
+        respondWith(firstTask, new MockResponse().setResponseCode(200).setBody("OK"));
+        respondWith(secondTask, new MockResponse().setResponseCode(200).setBody("OK"));
+
+        final SmokeTestMojo mojo = lookupSmokeTestMojo("0", "1000");
+        assertNotNull(mojo);
+
+        mojo.execute();
+
+        assertEquals(1, server.getRequestCount());
+        assertEquals("/v2/apps/" + APP_ID + "/tasks", server.takeRequest().getPath());
+        assertEquals(5, firstTask.getRequestCount());
+        assertEquals(5, secondTask.getRequestCount());
+        assertEquals(SMOKE_TEST_PATH, firstTask.takeRequest().getPath());
+        assertEquals(SMOKE_TEST_PATH, secondTask.takeRequest().getPath());
+    }
+
+    @Test
+    public void testSmokeTestFailedDueToErrorRate() throws Exception {
+        enqueueAppTasks();
+        respondWith(firstTask, new MockResponse().setResponseCode(200).setBody("OK"));
+        respondWith(secondTask, new MockResponse().setResponseCode(503).setBody("Unavailable"));
+        thrown.expect(MojoFailureException.class);
+        thrown.expectMessage("error rate 0.5");
+
+        final SmokeTestMojo mojo = lookupSmokeTestMojo("0.1", "0");
+        assertNotNull(mojo);
+
+        mojo.execute();
+    }
+
+    @Test
+    public void testSmokeTestFailedDueToLatency() throws Exception {
+        enqueueAppTasks();
+        respondWith(firstTask, new MockResponse().setResponseCode(200).setBody("OK"));
+        respondWith(secondTask, new MockResponse().setResponseCode(200).setBody("OK").setBodyDelay(300, TimeUnit.MILLISECONDS));
+        thrown.expect(MojoFailureException.class);
+        thrown.expectMessage("p99 latency");
+
+        final SmokeTestMojo mojo = lookupSmokeTestMojo("0", "200");
+        assertNotNull(mojo);
+
+        mojo.execute();
+    }
+}
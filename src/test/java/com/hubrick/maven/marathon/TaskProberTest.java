@@ -0,0 +1,47 @@
+/**
+ * Copyright (C) ${project.inceptionYear} Etaia AS (oss@hubrick.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hubrick.maven.marathon;
+
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.rule.MockWebServerRule;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.net.URL;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+
+public class TaskProberTest {
+
+    @Rule
+    public final MockWebServerRule server = new MockWebServerRule();
+
+    @Test
+    public void testUnexpectedFailureCountsAsError() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(200));
+        // no HTTP connection, so the probe fails with an unchecked exception
+        final URL fileUrl = getClass().getResource("/marathon.json");
+
+        final TaskProber.ProbeStatistics statistics = new TaskProber(2, 1000, new SystemStreamLog())
+                .probe(Arrays.asList(server.getUrl("/"), fileUrl), 1);
+
+        assertEquals(2, statistics.getRequests());
+        assertEquals(1, statistics.getErrors());
+        assertEquals(0.5, statistics.getErrorRate(), 0.0001);
+    }
+}
@@ -0,0 +1,150 @@
+/**
+ * Copyright (C) ${project.inceptionYear} Etaia AS (oss@hubrick.com)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.hubrick.maven.marathon;
+
+
+import com.google.common.base.Charsets;
+import com.jayway.awaitility.Awaitility;
+import com.google.common.collect.ImmutableSet;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.squareup.okhttp.mockwebserver.Dispatcher;
+import com.squareup.okhttp.mockwebserver.MockResponse;
+import com.squareup.okhttp.mockwebserver.RecordedRequest;
+import com.squareup.okhttp.mockwebserver.rule.MockWebServerRule;
+import org.codehaus.plexus.configuration.DefaultPlexusConfiguration;
+import org.codehaus.plexus.configuration.PlexusConfiguration;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static java.util.stream.Collectors.toSet;
+
+public class WatchMojoTest extends AbstractMarathonMojoTestWithJUnit4 {
+
+    private static final String APP_ID = "/watched-service";
+
+    @Rule
+    public final MockWebServerRule server = new MockWebServerRule();
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final MarathonSimulator simulator = new MarathonSimulator();
+    private Thread watchThread;
+
+    @After
+    public void stopWatching() throws Exception {
+        if (watchThread != null) {
+            watchThread.interrupt();
+            watchThread.join(TimeUnit.SECONDS.toMillis(10));
+        }
+    }
+
+    private static void writeConfig(Path file, String cmd) throws Exception {
+        Files.write(file, ("{\"id\": \"" + APP_ID + "\", \"instances\": 0, \"cmd\": \"" + cmd + "\"}").getBytes(Charsets.UTF_8));
+    }
+
+    private void startWatching(Path file) throws Exception {
+        PlexusConfiguration pluginCfg = new DefaultPlexusConfiguration("configuration");
+        pluginCfg.addChild("marathonHost", server.getUrl("").toString());
+        pluginCfg.addChild("marathonConfigFile", file.toString());
+        pluginCfg.addChild("watchDebounceInMs", "500");
+        pluginCfg.addChild("waitOnRunningDeployment", "false");
+        pluginCfg.addChild("waitForSuccessfulDeployment", "false");
+        pluginCfg.addChild("waitForSuccessfulDeploymentTimeoutInSec", "300");
+        final WatchMojo mojo = (WatchMojo) lookupMarathonMojo("watch", pluginCfg);
+
+        watchThread = new Thread(() -> {
+            try {
+                mojo.execute();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        watchThread.start();
+    }
+
+    private int updates() {
+        final Integer updates = simulator.getRequestCounts().get("PUT /v2/apps/{id}");
+        return updates == null ? 0 : updates;
+    }
+
+    @Test
+    public void testBurstOfChangesDeployedOnceAndUnchangedConfigNotDeployed() throws Exception {
+        server.get().setDispatcher(simulator);
+        final Path file = folder.getRoot().toPath().resolve("marathon.json");
+        writeConfig(file, "sleep 1");
+
+        startWatching(file);
+        Awaitility.await().atMost(10, TimeUnit.SECONDS).until(() -> simulator.getAppCount() == 1);
+
+        // a burst of saves within the debounce time is deployed once with the last content
+        writeConfig(file, "sleep 2");
+        Thread.sleep(50);
+        writeConfig(file, "sleep 3");
+        Thread.sleep(50);
+        writeConfig(file, "sleep 4");
+        Awaitility.await().atMost(10, TimeUnit.SECONDS).until(() -> updates() == 1);
+
+        // a truncated file is reported but doesn't stop watching, neither does saving the deployed config again
+        Files.write(file, new byte[0]);
+        Thread.sleep(1000);
+        writeConfig(file, "sleep 4");
+        Thread.sleep(1000);
+
+        assertTrue(watchThread.isAlive());
+        assertEquals(1, updates());
+        assertEquals(Integer.valueOf(1), simulator.getRequestCounts().get("POST /v2/apps"));
+    }
+
+    @Test
+    public void testRemovedNestedKeyIsPushedAsChangedField() throws Exception {
+        final List<String> updateBodies = new CopyOnWriteArrayList<>();
+        server.get().setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) throws InterruptedException {
+                if ("PUT".equals(request.getMethod())) {
+                    updateBodies.add(request.getBody().clone().readUtf8());
+                }
+                return simulator.dispatch(request);
+            }
+        });
+        final Path file = folder.getRoot().toPath().resolve("marathon.json");
+        Files.write(file, ("{\"id\": \"" + APP_ID + "\", \"instances\": 0, \"cmd\": \"sleep 1\", \"container\": {\"type\": \"DOCKER\","
+                + " \"docker\": {\"image\": \"example\", \"network\": \"BRIDGE\"}}}").getBytes(Charsets.UTF_8));
+
+        startWatching(file);
+        Awaitility.await().atMost(10, TimeUnit.SECONDS).until(() -> simulator.getAppCount() == 1);
+
+        Files.write(file, ("{\"id\": \"" + APP_ID + "\", \"instances\": 0, \"cmd\": \"sleep 1\", \"container\": {\"type\": \"DOCKER\","
+                + " \"docker\": {\"image\": \"example\"}}}").getBytes(Charsets.UTF_8));
+        Awaitility.await().atMost(10, TimeUnit.SECONDS).until(() -> updates() == 1);
+
+        // only the changed field is sent, and the app is fetched once to check for it and once to compare it
+        final JsonObject update = new JsonParser().parse(updateBodies.get(0)).getAsJsonObject();
+        assertEquals(ImmutableSet.of("id", "container"), update.entrySet().stream().map(Map.Entry::getKey).collect(toSet()));
+        assertFalse(update.getAsJsonObject("container").getAsJsonObject("docker").has("network"));
+        assertEquals(Integer.valueOf(3), simulator.getRequestCounts().get("GET /v2/apps/{id}"));
+    }
+}